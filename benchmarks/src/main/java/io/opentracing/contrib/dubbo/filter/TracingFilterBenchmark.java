@@ -0,0 +1,160 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.RpcInvocation;
+import com.alibaba.dubbo.rpc.RpcResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.NoopTracerFactory;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.dubbo.core.ConstSampler;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+/**
+ * Cost of {@link TracingFilter#invoke} around a stub invoker, without network and serialization.
+ * {@link #baseline} is the stub invoker alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TracingFilterBenchmark {
+
+    /**
+     * Finished spans kept by the {@link MockTracer} are dropped every so many calls.
+     */
+    private static final int RESET_INTERVAL = 1024;
+
+    @Param({"consumer", "provider"})
+    public String side;
+
+    @Param({"mock", "noop"})
+    public String tracer;
+
+    @Param({"true", "false"})
+    public boolean sampled;
+
+    private TracingFilter filter;
+    private MockTracer mockTracer;
+    private StubInvoker success;
+    private StubInvoker failure;
+    private Invocation invocation;
+    private int calls;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Tracer target;
+        if ("mock".equals(tracer)) {
+            mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+            target = mockTracer;
+        } else {
+            target = NoopTracerFactory.create();
+        }
+        filter = new TracingFilter();
+        filter.tracingHandler = new TracingHandler(target, new ConstSampler(sampled), false);
+
+        URL url = URL.valueOf("dubbo://127.0.0.1:20880/" + GreetingService.class.getName()
+                + "?" + Constants.SIDE_KEY + "=" + side);
+        success = new StubInvoker(url, new RpcResult("hello"));
+        failure = new StubInvoker(url, new RpcResult(new IllegalStateException("failed")));
+        invocation = new RpcInvocation("greet", new Class<?>[]{String.class, int.class}, new Object[]{"tom", 1});
+
+        RpcContext context = RpcContext.getContext();
+        context.setUrl(url);
+        context.setRemoteAddress("127.0.0.1", 20880);
+        if (!sampled && "provider".equals(side)) {
+            context.setAttachment(TracingHandler.SAMPLED_ATTACHMENT, TracingHandler.NOT_SAMPLED);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RpcContext.removeContext();
+    }
+
+    @Benchmark
+    public Result baseline() {
+        return success.invoke(invocation);
+    }
+
+    @Benchmark
+    public Result success() {
+        dropFinishedSpans();
+        return filter.invoke(success, invocation);
+    }
+
+    @Benchmark
+    public Result exception() {
+        dropFinishedSpans();
+        return filter.invoke(failure, invocation);
+    }
+
+    private void dropFinishedSpans() {
+        if (mockTracer != null && ++calls % RESET_INTERVAL == 0) {
+            mockTracer.reset();
+        }
+    }
+
+    public interface GreetingService {
+        String greet(String name, int times);
+    }
+
+    private static final class StubInvoker implements Invoker<GreetingService> {
+        private final URL url;
+        private final Result result;
+
+        StubInvoker(URL url, Result result) {
+            this.url = url;
+            this.result = result;
+        }
+
+        @Override
+        public Class<GreetingService> getInterface() {
+            return GreetingService.class;
+        }
+
+        @Override
+        public Result invoke(Invocation invocation) throws RpcException {
+            return result;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
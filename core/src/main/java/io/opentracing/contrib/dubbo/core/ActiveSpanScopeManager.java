@@ -0,0 +1,66 @@
+package io.opentracing.contrib.dubbo.core;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.BaseSpan;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * {@link ScopeManager} of the OpenTracing 0.30 tracers, activating spans with their ActiveSpanSource so that the
+ * application and other instrumentations still find them with {@link Tracer#activeSpan()}.
+ * <p>
+ * The active span is never captured and finishing it on deactivation is masked, so an asynchronous call just
+ * finishes its span from another thread. The source still counts references: with the thread-local source of
+ * opentracing-util, activating allocates the masking span, the source's ActiveSpan with its AtomicInteger and the
+ * scope, and closing decrements the counter. {@link ThreadLocalScopeManager} avoids both when the application
+ * does not need the span of the call from the tracer.
+ */
+class ActiveSpanScopeManager implements ScopeManager {
+
+    private final Tracer tracer;
+
+    ActiveSpanScopeManager(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Scope activate(Span span) {
+        return new ActiveSpanScope(tracer.makeActive(new UnfinishedSpan(span)));
+    }
+
+    @Override
+    public BaseSpan<?> activeSpan() {
+        return tracer.activeSpan();
+    }
+
+    private static final class ActiveSpanScope implements Scope {
+        private final ActiveSpan activeSpan;
+
+        ActiveSpanScope(ActiveSpan activeSpan) {
+            this.activeSpan = activeSpan;
+        }
+
+        @Override
+        public void close() {
+            activeSpan.deactivate();
+        }
+    }
+
+    /**
+     * The span handed to the ActiveSpanSource, finished by the filter rather than by the last deactivation.
+     */
+    private static final class UnfinishedSpan extends ForwardingSpan {
+
+        UnfinishedSpan(Span delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void finish(long finishMicros) {
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Formats the arguments of a call for the arguments tag. e.g. [arg1,arg2,...]
+ * <p>
+ * Only strings, numbers, booleans, characters, dates and enums are written, any other argument is written as its
+ * class name and never converted or serialized. The output is bounded by a budget of UTF-8 bytes, truncation mark
+ * included, and written into a reused thread local buffer.
+ * <p>
+ * Rules are separated by ';' and matched in order against "service.method", the first match applies. Patterns are
+ * the globs of the {@link TracingRules}, and one matching the service applies to all of its methods. e.g.
+ * <pre>
+ * com.xxx.UserService.login=redact:1;com.xxx.*Service.upload*=exclude;*=include
+ * </pre>
+ */
+class ArgumentCapture {
+
+    static final int DEFAULT_BUDGET = 512;
+
+    private static final String REDACTED = "***";
+    private static final String TRUNCATED = "...";
+
+    private final int budget;
+    private final boolean captureOnSuccess;
+    private final List<Rule> rules;
+    private final ThreadLocal<StringBuilder> buffer = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(budget + 1);
+        }
+    };
+
+    ArgumentCapture(int budget, boolean captureOnSuccess, String rules) {
+        this.budget = Math.max(TRUNCATED.length() + 1, budget);
+        this.captureOnSuccess = captureOnSuccess;
+        this.rules = parseRules(rules);
+    }
+
+    /**
+     * Whether the arguments of sampled calls are captured when the call succeeds too.
+     */
+    boolean isCaptureOnSuccess() {
+        return captureOnSuccess;
+    }
+
+    /**
+     * The policy of a method, cached with its {@link OperationMetadata}.
+     */
+    Policy getPolicy(OperationMetadata operation) {
+        Policy policy = operation.getArgumentPolicy();
+        if (policy == null) {
+            policy = getPolicy(operation.getOperationName());
+            operation.setArgumentPolicy(policy);
+        }
+        return policy;
+    }
+
+    /**
+     * @param operationName e.g. org.xxx.Test.test(String)
+     */
+    Policy getPolicy(String operationName) {
+        int parameters = operationName.indexOf('(');
+        String name = parameters < 0 ? operationName : operationName.substring(0, parameters);
+        int method = name.lastIndexOf('.');
+        String service = method < 0 ? name : name.substring(0, method);
+        for (Rule rule : rules) {
+            if (rule.matches(name, service)) {
+                return rule.policy;
+            }
+        }
+        return Policy.INCLUDE;
+    }
+
+    /**
+     * @return the formatted arguments, or null when there is none or the policy excludes them.
+     */
+    String format(OperationMetadata operation, Object[] arguments) {
+        if (arguments == null || arguments.length == 0) {
+            return null;
+        }
+        return format(arguments, getPolicy(operation));
+    }
+
+    String format(Object[] arguments, Policy policy) {
+        if (arguments == null || arguments.length == 0 || !policy.isCaptured()) {
+            return null;
+        }
+
+        StringBuilder out = buffer.get();
+        out.setLength(0);
+        out.append('[');
+        int bytes = 1;
+        for (int i = 0; i < arguments.length; i++) {
+            int start = out.length();
+            if (i > 0) {
+                out.append(',');
+            }
+            if (policy.isRedacted(i)) {
+                out.append(REDACTED);
+            } else {
+                append(out, arguments[i]);
+            }
+            bytes = countBytes(out, start, bytes, budget);
+            if (bytes > budget) {
+                countBytes(out, 0, 0, budget - TRUNCATED.length());
+                out.append(TRUNCATED);
+                return out.toString();
+            }
+        }
+        if (bytes == budget) {
+            countBytes(out, 0, 0, budget - TRUNCATED.length());
+            out.append(TRUNCATED);
+            return out.toString();
+        }
+        out.append(']');
+        return out.toString();
+    }
+
+    /**
+     * Adds the UTF-8 length of the chars written from start, cutting them where they exceed the limit.
+     *
+     * @return the bytes written, or more than the limit when cut.
+     */
+    private static int countBytes(StringBuilder out, int start, int bytes, int limit) {
+        for (int i = start; i < out.length(); i++) {
+            char c = out.charAt(i);
+            int size;
+            if (c < 0x80) {
+                size = 1;
+            } else if (c < 0x800) {
+                size = 2;
+            } else if (Character.isHighSurrogate(c)) {
+                size = 4;
+            } else if (Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(out.charAt(i - 1))) {
+                size = 0;
+            } else {
+                size = 3;
+            }
+            if (bytes + size > limit) {
+                out.setLength(i);
+                return limit + 1;
+            }
+            bytes += size;
+        }
+        return bytes;
+    }
+
+    private void append(StringBuilder out, Object argument) {
+        if (argument == null) {
+            out.append("null");
+        } else if (argument instanceof CharSequence) {
+            CharSequence text = (CharSequence) argument;
+            int end = Math.min(text.length(), budget + 1);
+            out.append(text, 0, end);
+        } else if (argument instanceof Number || argument instanceof Boolean || argument instanceof Character
+                || argument instanceof Date) {
+            out.append(argument);
+        } else if (argument instanceof Enum) {
+            out.append(((Enum<?>) argument).name());
+        } else {
+            out.append('<').append(argument.getClass().getName()).append('>');
+        }
+    }
+
+    private static List<Rule> parseRules(String rules) {
+        List<Rule> parsed = new ArrayList<>();
+        if (rules == null) {
+            return parsed;
+        }
+        for (String rule : rules.split(";")) {
+            int separator = rule.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String pattern = rule.substring(0, separator).trim();
+            String action = rule.substring(separator + 1).trim();
+            Policy policy;
+            if ("include".equals(action)) {
+                policy = Policy.INCLUDE;
+            } else if ("exclude".equals(action)) {
+                policy = Policy.EXCLUDE;
+            } else if (action.startsWith("redact")) {
+                policy = Policy.redact(action.startsWith("redact:") ? action.substring(7) : null);
+            } else {
+                throw new IllegalArgumentException("Unknown argument capture action " + action);
+            }
+            parsed.add(new Rule(pattern, policy));
+        }
+        return parsed;
+    }
+
+    private static final class Rule {
+        private final Pattern pattern;
+        private final Policy policy;
+
+        Rule(String pattern, Policy policy) {
+            this.pattern = TracingRules.compileGlob(pattern);
+            this.policy = policy;
+        }
+
+        boolean matches(String name, String service) {
+            return pattern.matcher(name).matches() || pattern.matcher(service).matches();
+        }
+    }
+
+    /**
+     * Which arguments of a method are captured.
+     */
+    static final class Policy {
+        static final Policy INCLUDE = new Policy(true, new boolean[0], false);
+        static final Policy EXCLUDE = new Policy(false, new boolean[0], false);
+
+        private final boolean captured;
+        private final boolean[] redacted;
+        private final boolean redactAll;
+
+        private Policy(boolean captured, boolean[] redacted, boolean redactAll) {
+            this.captured = captured;
+            this.redacted = redacted;
+            this.redactAll = redactAll;
+        }
+
+        /**
+         * @param indexes comma separated indexes of the redacted arguments, every argument when null.
+         */
+        static Policy redact(String indexes) {
+            if (indexes == null || indexes.trim().isEmpty()) {
+                return new Policy(true, new boolean[0], true);
+            }
+            String[] values = indexes.split(",");
+            int[] parsed = new int[values.length];
+            int max = -1;
+            for (int i = 0; i < values.length; i++) {
+                parsed[i] = Integer.parseInt(values[i].trim());
+                if (parsed[i] < 0) {
+                    throw new IllegalArgumentException("Negative argument index " + parsed[i]);
+                }
+                max = Math.max(max, parsed[i]);
+            }
+            boolean[] redacted = new boolean[max + 1];
+            for (int index : parsed) {
+                redacted[index] = true;
+            }
+            return new Policy(true, redacted, false);
+        }
+
+        boolean isCaptured() {
+            return captured;
+        }
+
+        boolean isRedacted(int index) {
+            return redactAll || (index < redacted.length && redacted[index]);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import io.opentracing.Span;
+
+/**
+ * Finishes spans on a background thread, so the tracer's reporting cost is not paid by Dubbo threads. Finished
+ * spans are handed off through a bounded lock-free multi-producer single-consumer queue and exported in batches.
+ */
+class AsyncReporter {
+    private static final Logger log = LoggerFactory.getLogger(AsyncReporter.class);
+
+    static final int DEFAULT_QUEUE_SIZE = 8192;
+    static final int DEFAULT_BATCH_SIZE = 128;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * What to do with a finished span when the queue is full.
+     */
+    enum DropPolicy {
+        /**
+         * Discard the span.
+         */
+        DROP,
+        /**
+         * Finish the span on the calling thread.
+         */
+        CALLER_RUNS;
+
+        static DropPolicy parse(String name) {
+            for (DropPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            return DROP;
+        }
+    }
+
+    private final DropPolicy dropPolicy;
+    private final int batchSize;
+    private final int mask;
+    private final Span[] spans;
+    private final long[] finishMicros;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong exported = new AtomicLong();
+
+    private final Thread exporter;
+    private volatile boolean running = true;
+
+    AsyncReporter(int queueSize, int batchSize, DropPolicy dropPolicy) {
+        int capacity = Integer.highestOneBit(Math.max(2, queueSize) - 1) << 1;
+        this.dropPolicy = dropPolicy;
+        this.batchSize = Math.max(1, batchSize);
+        this.mask = capacity - 1;
+        this.spans = new Span[capacity];
+        this.finishMicros = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+
+        exporter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                export();
+            }
+        }, "opentracing-dubbo-reporter");
+        exporter.setDaemon(true);
+        exporter.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "opentracing-dubbo-reporter-shutdown"));
+    }
+
+    /**
+     * Queue the span to be finished with the given timestamp.
+     */
+    void report(Span span, long finishMicros) {
+        if (!running) {
+            // the exporter is stopping, e.g. at shutdown
+            finish(span, finishMicros);
+            exported.incrementAndGet();
+            return;
+        }
+        if (offer(span, finishMicros)) {
+            enqueued.incrementAndGet();
+            if (!running) {
+                // close() may have drained the queue before the span was queued
+                drainClosed();
+            }
+            return;
+        }
+
+        dropped.incrementAndGet();
+        if (dropPolicy == DropPolicy.CALLER_RUNS) {
+            finish(span, finishMicros);
+        }
+    }
+
+    long getEnqueued() {
+        return enqueued.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    long getExported() {
+        return exported.get();
+    }
+
+    int getCapacity() {
+        return spans.length;
+    }
+
+    /**
+     * Number of spans waiting to be exported.
+     */
+    int getQueueDepth() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Stop the exporter thread once the queued spans are exported. Spans reported afterwards are finished on the
+     * calling thread, those queued while the exporter stopped are exported here, and those queued by a producer
+     * that saw the reporter running just before it closed are exported by that producer, see {@link #drainClosed}.
+     */
+    synchronized void close() {
+        running = false;
+        LockSupport.unpark(exporter);
+        try {
+            exporter.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (exporter.isAlive()) {
+            long pending = getQueueDepth();
+            dropped.addAndGet(pending);
+            log.warn("Reporter did not stop in time, {} spans were not exported", pending);
+            return;
+        }
+        drainAll();
+    }
+
+    /**
+     * Export what a producer queued once the reporter was closing. Waits for {@link #close} to return; if the
+     * exporter is gone, the lock makes this thread the only consumer.
+     */
+    private synchronized void drainClosed() {
+        if (!exporter.isAlive()) {
+            drainAll();
+        }
+    }
+
+    /**
+     * Export every claimed slot, waiting for the producers that claimed one to fill it.
+     */
+    private void drainAll() {
+        while (head < tail.get()) {
+            if (drain() == 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean offer(Span span, long micros) {
+        for (; ; ) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence < position) {
+                return false;
+            }
+            if (sequence == position && tail.compareAndSet(position, position + 1)) {
+                spans[index] = span;
+                finishMicros[index] = micros;
+                sequences.lazySet(index, position + 1);
+                if (position - head == batchSize) {
+                    LockSupport.unpark(exporter);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void export() {
+        while (running) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        while (drain() > 0) {
+            // flush what is left
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        while (count < batchSize) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            Span span = spans[index];
+            long micros = finishMicros[index];
+            spans[index] = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+
+            finish(span, micros);
+            exported.incrementAndGet();
+            count++;
+        }
+        return count;
+    }
+
+    private static void finish(Span span, long finishMicros) {
+        try {
+            span.finish(finishMicros);
+        } catch (RuntimeException e) {
+            log.warn("Failed to report span", e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.opentracing.contrib.dubbo.core;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.BaseSpan;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+
+/**
+ * Tracer whose spans are finished by an {@link AsyncReporter} instead of the thread closing them.
+ */
+class AsyncReportingTracer implements Tracer {
+
+    private final Tracer delegate;
+    private final AsyncReporter reporter;
+
+    AsyncReportingTracer(Tracer delegate, AsyncReporter reporter) {
+        this.delegate = delegate;
+        this.reporter = reporter;
+    }
+
+    Tracer getDelegate() {
+        return delegate;
+    }
+
+    AsyncReporter getReporter() {
+        return reporter;
+    }
+
+    @Override
+    public Tracer.SpanBuilder buildSpan(String operationName) {
+        return new SpanBuilder(delegate.buildSpan(operationName));
+    }
+
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        delegate.inject(spanContext, format, carrier);
+    }
+
+    @Override
+    public <C> SpanContext extract(Format<C> format, C carrier) {
+        return delegate.extract(format, carrier);
+    }
+
+    @Override
+    public ActiveSpan activeSpan() {
+        return delegate.activeSpan();
+    }
+
+    @Override
+    public ActiveSpan makeActive(Span span) {
+        return delegate.makeActive(span);
+    }
+
+    /**
+     * Starts spans on the {@link MicrosClock} unless given a timestamp, since they are finished on it.
+     */
+    private final class SpanBuilder implements Tracer.SpanBuilder {
+        private final Tracer.SpanBuilder builder;
+        private boolean startTimestamp;
+
+        SpanBuilder(Tracer.SpanBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public Tracer.SpanBuilder asChildOf(SpanContext parent) {
+            builder.asChildOf(parent);
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder asChildOf(BaseSpan<?> parent) {
+            builder.asChildOf(parent);
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+            builder.addReference(referenceType, referencedContext);
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder ignoreActiveSpan() {
+            builder.ignoreActiveSpan();
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder withTag(String key, String value) {
+            builder.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder withTag(String key, boolean value) {
+            builder.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder withTag(String key, Number value) {
+            builder.withTag(key, value);
+            return this;
+        }
+
+        @Override
+        public Tracer.SpanBuilder withStartTimestamp(long microseconds) {
+            builder.withStartTimestamp(microseconds);
+            startTimestamp = true;
+            return this;
+        }
+
+        @Override
+        public ActiveSpan startActive() {
+            return delegate.makeActive(startManual());
+        }
+
+        @Override
+        public Span startManual() {
+            if (!startTimestamp) {
+                builder.withStartTimestamp(MicrosClock.nowMicros());
+            }
+            return new ReportingSpan(builder.startManual());
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public Span start() {
+            return startManual();
+        }
+    }
+
+    private final class ReportingSpan extends ForwardingSpan {
+
+        ReportingSpan(Span delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void finish() {
+            reporter.report(delegate, MicrosClock.nowMicros());
+        }
+
+        @Override
+        public void finish(long finishMicros) {
+            reporter.report(delegate, finishMicros);
+        }
+    }
+}
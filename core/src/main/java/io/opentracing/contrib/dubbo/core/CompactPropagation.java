@@ -0,0 +1,313 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import io.opentracing.propagation.TextMapInjectAdapter;
+
+/**
+ * Packs the span context into the single {@link #ATTACHMENT} attachment instead of one attachment per
+ * TEXT_MAP field. e.g. 1;traceid=1,spanid=2,baggage-user=jack
+ * <p>
+ * The format is a version and the TEXT_MAP fields of the tracer, with ',', '=' and '%' percent encoded. Baggage is
+ * limited in count and in length. A trace that is not sampled is sent as {@link TracingHandler#NOT_SAMPLED} in the
+ * same attachment. The fields are written straight into the attachment as the tracer injects them and read
+ * straight from it as the tracer extracts them. The ids stay in the tracer's own fields, the only way to rebuild
+ * its span contexts, so the format saves attachments when the tracer writes several fields, not encoding work:
+ * it costs more than TEXT_MAP. Providers read both formats, so a consumer only uses it when the provider
+ * advertises it with the {@link #PARAMETER} url parameter, e.g.
+ * &lt;dubbo:parameter key="tracing.propagation" value="compact"/&gt;.
+ * <p>
+ * The attachments of a call served by a provider are copied to the calls it makes, so each format removes the
+ * attachments of the other one, which would otherwise carry the inbound context to the next provider.
+ */
+public class CompactPropagation {
+
+    public static final String ATTACHMENT = "ot-ctx";
+    public static final String PARAMETER = "tracing.propagation";
+    public static final String COMPACT = "compact";
+
+    static final int DEFAULT_MAX_LENGTH = 1024;
+    static final int DEFAULT_MAX_BAGGAGE = 8;
+
+    private static final char VERSION = '1';
+
+    private final int maxLength;
+    private final int maxBaggage;
+    private final ThreadLocal<Encoder> encoders = new ThreadLocal<Encoder>() {
+        @Override
+        protected Encoder initialValue() {
+            return new Encoder();
+        }
+    };
+
+    CompactPropagation(int maxLength, int maxBaggage) {
+        this.maxLength = maxLength;
+        this.maxBaggage = maxBaggage;
+    }
+
+    static boolean isAdvertised(Map<String, String> parameters) {
+        return parameters != null && COMPACT.equals(parameters.get(PARAMETER));
+    }
+
+    void inject(Tracer tracer, SpanContext spanContext, Map<String, String> carrier) {
+        Encoder encoder = encoders.get();
+        encoder.reset(carrier, baggageKeys(spanContext));
+        try {
+            tracer.inject(spanContext, Format.Builtin.TEXT_MAP, encoder);
+            carrier.put(ATTACHMENT, encoder.encoded.toString());
+        } finally {
+            encoder.reset(null, null);
+        }
+    }
+
+    /**
+     * Inject the TEXT_MAP fields of the tracer, one attachment each.
+     */
+    static void injectTextMap(Tracer tracer, SpanContext spanContext, Map<String, String> carrier) {
+        carrier.remove(ATTACHMENT);
+        tracer.inject(spanContext, Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(carrier));
+    }
+
+    /**
+     * Extract from the compact attachment, or from the TEXT_MAP fields when the consumer did not send it.
+     */
+    SpanContext extract(Tracer tracer, Map<String, String> carrier) {
+        String value = carrier.get(ATTACHMENT);
+        if (value == null || !isKnown(value)) {
+            return tracer.extract(Format.Builtin.TEXT_MAP, new TextMapExtractAdapter(carrier));
+        }
+        return tracer.extract(Format.Builtin.TEXT_MAP, new Decoder(value));
+    }
+
+    String encode(Map<String, String> textMap, Set<String> baggageKeys) {
+        Encoder encoder = new Encoder();
+        encoder.reset(null, baggageKeys);
+        for (Map.Entry<String, String> field : textMap.entrySet()) {
+            encoder.put(field.getKey(), field.getValue());
+        }
+        return encoder.encoded.toString();
+    }
+
+    /**
+     * The TEXT_MAP fields of the span context without its baggage, e.g. traceid=1,spanid=2, by which the trace of a
+     * call can be looked up.
+     */
+    static String encodeIds(Tracer tracer, SpanContext spanContext) {
+        Map<String, String> textMap = new LinkedHashMap<>();
+        tracer.inject(spanContext, Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(textMap));
+        Set<String> baggageKeys = baggageKeys(spanContext);
+        StringBuilder encoded = new StringBuilder(48);
+        for (Map.Entry<String, String> field : textMap.entrySet()) {
+            if (isBaggage(field.getKey(), baggageKeys)) {
+                continue;
+            }
+            if (encoded.length() > 0) {
+                encoded.append(',');
+            }
+            escape(field.getKey(), encoded);
+            encoded.append('=');
+            escape(field.getValue(), encoded);
+        }
+        return encoded.toString();
+    }
+
+    private static boolean isKnown(String value) {
+        return value.length() >= 2 && value.charAt(0) == VERSION && value.charAt(1) == ';';
+    }
+
+    /**
+     * @return false when the value is not in a known format.
+     */
+    static boolean decode(String value, Map<String, String> textMap) {
+        if (!isKnown(value)) {
+            return false;
+        }
+        for (Map.Entry<String, String> field : new Decoder(value)) {
+            textMap.put(field.getKey(), field.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * Writes the fields injected by the tracer into the compact value, and removes them from the carrier.
+     */
+    private final class Encoder implements TextMap {
+        private final StringBuilder encoded = new StringBuilder(64);
+        private Map<String, String> carrier;
+        private Set<String> baggageKeys;
+        private int baggage;
+
+        void reset(Map<String, String> carrier, Set<String> baggageKeys) {
+            this.carrier = carrier;
+            this.baggageKeys = baggageKeys;
+            baggage = 0;
+            encoded.setLength(0);
+            encoded.append(VERSION).append(';');
+        }
+
+        @Override
+        public void put(String key, String value) {
+            if (carrier != null) {
+                carrier.remove(key);
+            }
+            boolean isBaggage = isBaggage(key, baggageKeys);
+            if (isBaggage && baggage >= maxBaggage) {
+                return;
+            }
+            int length = encoded.length();
+            if (length > 2) {
+                encoded.append(',');
+            }
+            escape(key, encoded);
+            encoded.append('=');
+            escape(value, encoded);
+            if (isBaggage) {
+                if (encoded.length() > maxLength) {
+                    encoded.setLength(length);
+                } else {
+                    baggage++;
+                }
+            }
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            throw new UnsupportedOperationException("Encoder should only be used with Tracer.inject()");
+        }
+    }
+
+    /**
+     * Reads the fields of a compact value as the tracer extracts them.
+     */
+    private static final class Decoder implements TextMap {
+        private final String value;
+
+        Decoder(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            return new Iterator<Map.Entry<String, String>>() {
+                private int start = 2;
+                private Map.Entry<String, String> next = advance();
+
+                private Map.Entry<String, String> advance() {
+                    while (start < value.length()) {
+                        int end = value.indexOf(',', start);
+                        if (end < 0) {
+                            end = value.length();
+                        }
+                        int separator = value.indexOf('=', start);
+                        int fieldStart = start;
+                        start = end + 1;
+                        if (separator > fieldStart && separator < end) {
+                            return new AbstractMap.SimpleImmutableEntry<>(unescape(value, fieldStart, separator),
+                                    unescape(value, separator + 1, end));
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<String, String> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, String> field = next;
+                    next = advance();
+                    return field;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void put(String key, String value) {
+            throw new UnsupportedOperationException("Decoder should only be used with Tracer.extract()");
+        }
+    }
+
+    private static Set<String> baggageKeys(SpanContext spanContext) {
+        Iterator<Map.Entry<String, String>> items = spanContext.baggageItems().iterator();
+        if (!items.hasNext()) {
+            return null;
+        }
+        Set<String> keys = new HashSet<>();
+        while (items.hasNext()) {
+            keys.add(items.next().getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Tracers prefix baggage keys in TEXT_MAP, e.g. uberctx-user for the baggage item user. The prefix ends with a
+     * separator, so that a baggage item named id does not match the traceid field.
+     */
+    static boolean isBaggage(String field, Set<String> baggageKeys) {
+        if (baggageKeys == null) {
+            return false;
+        }
+        for (String key : baggageKeys) {
+            int prefix = field.length() - key.length();
+            if (prefix > 0 && field.endsWith(key) && isSeparator(field.charAt(prefix - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '-' || c == '_' || c == '.';
+    }
+
+    private static void escape(String text, StringBuilder encoded) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '=' || c == '%') {
+                encoded.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+            } else {
+                encoded.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String value, int start, int end) {
+        int escape = value.indexOf('%', start);
+        if (escape < 0 || escape >= end) {
+            return value.substring(start, end);
+        }
+        StringBuilder text = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '%' && i + 2 < end) {
+                text.append((char) (Character.digit(value.charAt(i + 1), 16) << 4
+                        | Character.digit(value.charAt(i + 2), 16)));
+                i += 2;
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
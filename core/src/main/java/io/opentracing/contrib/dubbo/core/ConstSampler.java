@@ -0,0 +1,25 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Sample every trace, or none.
+ */
+public class ConstSampler implements Sampler {
+
+    static final String TYPE = "const";
+
+    private final boolean decision;
+
+    public ConstSampler(boolean decision) {
+        this.decision = decision;
+    }
+
+    @Override
+    public boolean isSampled(String operationName) {
+        return decision;
+    }
+
+    @Override
+    public String toString() {
+        return TYPE + "(" + decision + ")";
+    }
+}
@@ -0,0 +1,187 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.tag.Tags;
+
+/**
+ * Renders the stack of a failure at most a few times per second for each kind of failure. Failures are
+ * fingerprinted by class and top stack frames; the rendered frames are kept in a bounded cache, with one entry
+ * evicted when it is full, while the {@link Throwable#toString()} lines carrying the messages are rendered for each
+ * failure. Repeated failures beyond the rate only reference the fingerprint and count the repeats.
+ */
+class ExceptionRenderer {
+
+    static final String STACK = "stack";
+    static final String STACK_REF = "stack.ref";
+    static final String STACK_REPEATED = "stack.repeated";
+
+    static final int DEFAULT_MAX_DEPTH = 64;
+    static final int DEFAULT_MAX_LENGTH = 8192;
+    static final int DEFAULT_RATE = 10;
+    static final int DEFAULT_CACHE_SIZE = 256;
+    static final int DEFAULT_FINGERPRINT_FRAMES = 5;
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxDepth;
+    private final int maxLength;
+    private final int ratePerSecond;
+    private final int fingerprintFrames;
+    private final int cacheSize;
+    private final ConcurrentMap<Long, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+    ExceptionRenderer(int maxDepth, int maxLength, int ratePerSecond, int cacheSize, int fingerprintFrames) {
+        this.maxDepth = maxDepth;
+        this.maxLength = maxLength;
+        this.ratePerSecond = ratePerSecond;
+        this.cacheSize = Math.max(1, cacheSize);
+        this.fingerprintFrames = fingerprintFrames;
+    }
+
+    Map<String, String> logsForException(Throwable throwable) {
+        Map<String, String> errorLog = new LinkedHashMap<>(8);
+        errorLog.put("event", Tags.ERROR.getKey());
+        errorLog.put("error.kind", throwable.getClass().getName());
+
+        String message = throwable.getCause() != null ? throwable.getCause().getMessage() : throwable.getMessage();
+        if (message != null) {
+            errorLog.put("message", message);
+        }
+
+        StackTraceElement[] stackTrace = throwable.getStackTrace();
+        long id = fingerprint(throwable, stackTrace);
+        Fingerprint fingerprint = getFingerprint(id);
+        errorLog.put(STACK_REF, Long.toHexString(id));
+
+        int repeated = fingerprint.acquire(System.nanoTime(), ratePerSecond);
+        if (repeated < 0) {
+            String[] frames = fingerprint.frames;
+            if (frames == null) {
+                frames = renderFrames(throwable, stackTrace);
+                fingerprint.frames = frames;
+            }
+            errorLog.put(STACK, render(throwable, frames));
+        } else {
+            errorLog.put(STACK_REPEATED, Integer.toString(repeated));
+        }
+        return errorLog;
+    }
+
+    /**
+     * Hash of the class of the failure and of its cause, and of their top frames.
+     */
+    long fingerprint(Throwable throwable, StackTraceElement[] stackTrace) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + throwable.getClass().getName().hashCode();
+        for (int i = 0; i < stackTrace.length && i < fingerprintFrames; i++) {
+            hash = 31 * hash + stackTrace[i].hashCode();
+        }
+        Throwable cause = throwable.getCause();
+        if (cause != null && cause != throwable) {
+            hash = 31 * hash + cause.getClass().getName().hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Like {@link Throwable#printStackTrace()}, with at most maxDepth frames per throwable and maxLength chars.
+     */
+    String render(Throwable throwable, StackTraceElement[] stackTrace) {
+        return render(throwable, renderFrames(throwable, stackTrace));
+    }
+
+    /**
+     * The frames of the throwable and of each of its causes, without their {@link Throwable#toString()} line.
+     */
+    private String[] renderFrames(Throwable throwable, StackTraceElement[] stackTrace) {
+        List<String> causes = new ArrayList<>(2);
+        Map<Throwable, Boolean> seen = new IdentityHashMap<>();
+        Throwable current = throwable;
+        StackTraceElement[] frames = stackTrace;
+        int length = 0;
+        while (current != null && !seen.containsKey(current) && length < maxLength) {
+            seen.put(current, Boolean.TRUE);
+            if (current != throwable) {
+                frames = current.getStackTrace();
+            }
+            StringBuilder stack = new StringBuilder(Math.min(maxLength - length, 1024));
+            int depth = Math.min(frames.length, maxDepth);
+            for (int i = 0; i < depth && length + stack.length() < maxLength; i++) {
+                stack.append("\tat ").append(frames[i]).append('\n');
+            }
+            if (frames.length > depth) {
+                stack.append("\t... ").append(frames.length - depth).append(" more\n");
+            }
+            causes.add(stack.toString());
+            length += stack.length();
+            current = current.getCause();
+        }
+        return causes.toArray(new String[causes.size()]);
+    }
+
+    private String render(Throwable throwable, String[] frames) {
+        StringBuilder stack = new StringBuilder(Math.min(maxLength, 1024));
+        Throwable current = throwable;
+        for (int i = 0; i < frames.length && current != null && stack.length() < maxLength; i++) {
+            if (i > 0) {
+                stack.append("Caused by: ");
+            }
+            stack.append(current).append('\n').append(frames[i]);
+            current = current.getCause();
+        }
+        if (stack.length() > maxLength) {
+            stack.setLength(maxLength);
+        }
+        return stack.toString();
+    }
+
+    private Fingerprint getFingerprint(Long id) {
+        Fingerprint fingerprint = fingerprints.get(id);
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        if (fingerprints.size() >= cacheSize) {
+            evictOne();
+        }
+        fingerprint = new Fingerprint();
+        Fingerprint previous = fingerprints.putIfAbsent(id, fingerprint);
+        return previous != null ? previous : fingerprint;
+    }
+
+    private void evictOne() {
+        Iterator<Long> iterator = fingerprints.keySet().iterator();
+        if (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Fingerprint {
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime() - WINDOW_NANOS);
+        private final AtomicInteger count = new AtomicInteger();
+        private volatile String[] frames;
+
+        /**
+         * @return -1 when the full stack can be logged, or the number of repeats in the current second.
+         */
+        int acquire(long now, int ratePerSecond) {
+            long start = windowStart.get();
+            if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+                count.set(0);
+            }
+            int current = count.incrementAndGet();
+            return current <= ratePerSecond ? -1 : current - ratePerSecond;
+        }
+    }
+}
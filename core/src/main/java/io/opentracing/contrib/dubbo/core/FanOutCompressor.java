@@ -0,0 +1,159 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+
+/**
+ * Folds the repeated consumer calls of an operation under the same server span into one composite span.
+ * The first calls get their own spans, the next ones are only counted, and their traces are not sampled on the
+ * provider side. Failed calls and calls slower than a multiple of the mean of the folded ones are still reported
+ * as spans of their own, but their provider spans are lost too: a call is only known to be one once it returned,
+ * after its context was sent. A provider that always samples errors still reports its failures, without parent.
+ * <p>
+ * Folds are kept per thread and reported when their server span closes, or when a call of the thread runs under
+ * another parent. Calls are only folded while the server span of the filter is the active span, since spans the
+ * application activates are not closed through the filter. Composite spans keep the times of the folded calls and
+ * the last peer called.
+ */
+public class FanOutCompressor {
+
+    static final double DEFAULT_OUTLIER_FACTOR = 3;
+
+    public static final String COUNT = "dubbo.fanout.count";
+    public static final String ERRORS = "dubbo.fanout.errors";
+    static final String TOTAL = "dubbo.fanout.total_us";
+    static final String MIN = "dubbo.fanout.min_us";
+    static final String MAX = "dubbo.fanout.max_us";
+    public static final String OUTLIER = "dubbo.fanout.outlier";
+
+    private final Tracer tracer;
+    private final int threshold;
+    private final double outlierFactor;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     * @param threshold calls of an operation and peer under a parent that get their own span before folding.
+     */
+    FanOutCompressor(Tracer tracer, int threshold, double outlierFactor) {
+        this.tracer = tracer;
+        this.threshold = Math.max(1, threshold);
+        this.outlierFactor = outlierFactor;
+    }
+
+    /**
+     * @return the fold to record the call into, or null when it gets its own span.
+     */
+    Fold fold(SpanContext parent, OperationMetadata operation) {
+        State state = this.state.get();
+        if (state.parent != parent) {
+            state.report();
+            state.parent = parent;
+        }
+        Fold fold = state.folds.get(operation);
+        if (fold == null) {
+            fold = new Fold(operation);
+            state.folds.put(operation, fold);
+        }
+        return ++fold.calls > threshold ? fold : null;
+    }
+
+    /**
+     * @return whether the call is reported as a span of its own as well.
+     */
+    boolean record(Fold fold, String remoteAddress, long startMicros, long durationNanos, boolean error) {
+        boolean outlier = error || (fold.count >= threshold
+                && durationNanos > outlierFactor * fold.totalNanos / fold.count);
+        if (fold.count == 0) {
+            fold.startMicros = startMicros;
+            fold.minNanos = durationNanos;
+        }
+        fold.count++;
+        if (error) {
+            fold.errors++;
+        }
+        fold.totalNanos += durationNanos;
+        fold.minNanos = Math.min(fold.minNanos, durationNanos);
+        fold.maxNanos = Math.max(fold.maxNanos, durationNanos);
+        fold.endMicros = startMicros + TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        fold.remoteAddress = remoteAddress;
+        return outlier;
+    }
+
+    /**
+     * Report the folds under a parent that is closing.
+     */
+    void flush(SpanContext parent) {
+        State state = this.state.get();
+        if (state.parent == parent) {
+            state.report();
+            state.parent = null;
+        }
+    }
+
+    private void report(SpanContext parent, Fold fold) {
+        OperationMetadata operation = fold.operation;
+        Span span = tracer.buildSpan(operation.getOperationName())
+                .ignoreActiveSpan()
+                .asChildOf(parent)
+                .withStartTimestamp(fold.startMicros)
+                .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+                .startManual();
+        Tags.COMPONENT.set(span, operation.getComponent());
+        span.setTag(TracingHandler.DUBBO_URL, operation.getRequestURL());
+        span.setTag(TracingHandler.PEER_ADDRESS, fold.remoteAddress);
+        span.setTag(COUNT, fold.count);
+        span.setTag(ERRORS, fold.errors);
+        span.setTag(TOTAL, TimeUnit.NANOSECONDS.toMicros(fold.totalNanos));
+        span.setTag(MIN, TimeUnit.NANOSECONDS.toMicros(fold.minNanos));
+        span.setTag(MAX, TimeUnit.NANOSECONDS.toMicros(fold.maxNanos));
+        if (fold.errors > 0) {
+            Tags.ERROR.set(span, Boolean.TRUE);
+        }
+        span.finish(fold.endMicros);
+    }
+
+    /**
+     * Calls of an operation under a parent, only touched by its thread.
+     */
+    public static final class Fold {
+        private final OperationMetadata operation;
+        private int calls;
+        private long count;
+        private long errors;
+        private long totalNanos;
+        private long minNanos;
+        private long maxNanos;
+        private long startMicros;
+        private long endMicros;
+        private String remoteAddress;
+
+        Fold(OperationMetadata operation) {
+            this.operation = operation;
+        }
+    }
+
+    private final class State {
+        private SpanContext parent;
+        private final Map<OperationMetadata, Fold> folds = new IdentityHashMap<>();
+
+        void report() {
+            for (Fold fold : folds.values()) {
+                if (fold.count > 0) {
+                    FanOutCompressor.this.report(parent, fold);
+                }
+            }
+            folds.clear();
+        }
+    }
+}
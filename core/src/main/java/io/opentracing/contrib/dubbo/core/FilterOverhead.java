@@ -0,0 +1,99 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Time spent by the filter itself on one side, the call minus the time of the rest of the chain: operation lookup,
+ * sampling, span start, inject or extract, tags and close.
+ */
+public final class FilterOverhead {
+
+    private final String side;
+    private final StripedCounter calls = new StripedCounter();
+    private final StripedCounter totalNanos = new StripedCounter();
+    private final StripedCounter totalCallNanos = new StripedCounter();
+    private final LatencyHistogram nanos = new LatencyHistogram();
+
+    FilterOverhead(String side) {
+        this.side = side;
+    }
+
+    /**
+     * @param callNanos time of the whole call, filter included.
+     */
+    public void record(long overheadNanos, long callNanos) {
+        calls.increment();
+        totalNanos.add(overheadNanos);
+        totalCallNanos.add(callNanos);
+        nanos.record(overheadNanos);
+    }
+
+    /**
+     * Sums since the start, never reset, for deltas between two reads.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    long getTotalCallNanos() {
+        return totalCallNanos.sum();
+    }
+
+    public Snapshot snapshot(boolean reset) {
+        if (reset) {
+            return new Snapshot(side, calls.sumThenReset(), totalNanos.sumThenReset(),
+                    totalCallNanos.sumThenReset(), nanos.snapshot(true));
+        }
+        return new Snapshot(side, calls.sum(), totalNanos.sum(), totalCallNanos.sum(), nanos.snapshot(false));
+    }
+
+    public static final class Snapshot {
+        private final String side;
+        private final long calls;
+        private final long totalNanos;
+        private final long totalCallNanos;
+        private final long[] counts;
+
+        Snapshot(String side, long calls, long totalNanos, long totalCallNanos, long[] counts) {
+            this.side = side;
+            this.calls = calls;
+            this.totalNanos = totalNanos;
+            this.totalCallNanos = totalCallNanos;
+            this.counts = counts;
+        }
+
+        String getSide() {
+            return side;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        long getTotalCallNanos() {
+            return totalCallNanos;
+        }
+
+        long getPercentileNanos(double percentile) {
+            return LatencyHistogram.percentile(counts, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return side + " overhead"
+                    + " calls=" + calls
+                    + " share=" + (totalCallNanos > 0 ? totalNanos * 100.0 / totalCallNanos : 0) + "%"
+                    + " avg=" + (calls > 0 ? totalNanos / calls : 0) + "ns"
+                    + " p50=" + getPercentileNanos(50) + "ns"
+                    + " p90=" + getPercentileNanos(90) + "ns"
+                    + " p99=" + getPercentileNanos(99) + "ns"
+                    + " max=" + getPercentileNanos(100) + "ns";
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.Map;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+
+/**
+ * Span forwarding every call to another span, to be extended by spans that intercept some of them.
+ */
+abstract class ForwardingSpan implements Span {
+
+    protected final Span delegate;
+
+    ForwardingSpan(Span delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * The span calls are forwarded to.
+     */
+    Span getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void finish() {
+        getDelegate().finish();
+    }
+
+    @Override
+    public void finish(long finishMicros) {
+        getDelegate().finish(finishMicros);
+    }
+
+    @Override
+    public SpanContext context() {
+        return getDelegate().context();
+    }
+
+    @Override
+    public Span setTag(String key, String value) {
+        getDelegate().setTag(key, value);
+        return this;
+    }
+
+    @Override
+    public Span setTag(String key, boolean value) {
+        getDelegate().setTag(key, value);
+        return this;
+    }
+
+    @Override
+    public Span setTag(String key, Number value) {
+        getDelegate().setTag(key, value);
+        return this;
+    }
+
+    @Override
+    public Span log(Map<String, ?> fields) {
+        getDelegate().log(fields);
+        return this;
+    }
+
+    @Override
+    public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+        getDelegate().log(timestampMicroseconds, fields);
+        return this;
+    }
+
+    @Override
+    public Span log(String event) {
+        getDelegate().log(event);
+        return this;
+    }
+
+    @Override
+    public Span log(long timestampMicroseconds, String event) {
+        getDelegate().log(timestampMicroseconds, event);
+        return this;
+    }
+
+    @Override
+    @Deprecated
+    public Span log(String eventName, Object payload) {
+        getDelegate().log(eventName, payload);
+        return this;
+    }
+
+    @Override
+    @Deprecated
+    public Span log(long timestampMicroseconds, String eventName, Object payload) {
+        getDelegate().log(timestampMicroseconds, eventName, payload);
+        return this;
+    }
+
+    @Override
+    public Span setBaggageItem(String key, String value) {
+        getDelegate().setBaggageItem(key, value);
+        return this;
+    }
+
+    @Override
+    public String getBaggageItem(String key) {
+        return getDelegate().getBaggageItem(key);
+    }
+
+    @Override
+    public Span setOperationName(String operationName) {
+        getDelegate().setOperationName(operationName);
+        return this;
+    }
+}
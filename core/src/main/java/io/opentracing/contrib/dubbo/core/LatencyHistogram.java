@@ -0,0 +1,80 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed log-linear histogram of durations, in microseconds or nanoseconds: one bucket per unit below 16, then 16
+ * buckets per power of two, so a recorded value is within 1/16 of its bucket. Values above 2^32 are counted in the
+ * last bucket.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 31;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long value) {
+        counts.incrementAndGet(index(value));
+    }
+
+    /**
+     * Copy the counts, and reset them when asked. Values recorded meanwhile are either in the copy or left for
+     * the next one.
+     */
+    long[] snapshot(boolean reset) {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+        }
+        return snapshot;
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The smallest value counted in a bucket.
+     */
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * The value below which the given percentage of the counts fall, as the highest value of its bucket.
+     */
+    static long percentile(long[] counts, double percentile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i + 1 < counts.length ? lowerBound(i + 1) - 1 : lowerBound(i);
+            }
+        }
+        return lowerBound(counts.length - 1);
+    }
+}
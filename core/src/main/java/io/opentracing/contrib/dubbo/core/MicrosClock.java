@@ -0,0 +1,22 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock in microseconds since epoch, read from {@link System#nanoTime()} against an anchor taken when the
+ * class is loaded. Unlike the milliseconds of {@link System#currentTimeMillis()}, sub-millisecond calls get a
+ * duration, and a span timestamped here cannot end before it starts. The clock does not follow later adjustments
+ * of the system time.
+ */
+public final class MicrosClock {
+
+    private static final long ANCHOR_MICROS = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private static final long ANCHOR_NANOS = System.nanoTime();
+
+    private MicrosClock() {
+    }
+
+    public static long nowMicros() {
+        return ANCHOR_MICROS + (System.nanoTime() - ANCHOR_NANOS) / 1000;
+    }
+}
@@ -0,0 +1,235 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache of {@link OperationMetadata}, keyed by endpoint (protocol, host, port, path), method name,
+ * parameter types and url parameters. Lookups reuse a thread local key, so a hit does not allocate.
+ * <p>
+ * The url parameters are compared by identity: an override pushed by the registry creates invokers with a new
+ * url, whose operations are created again from the new parameters. Those of the old url are evicted when its
+ * invoker or exporter is destroyed.
+ */
+public class OperationCache {
+
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * Url parameters of a service, reference or method (e.g. getBooks.tracing=false).
+     */
+    public static final String TRACING = "tracing";
+    public static final String TRACING_SAMPLE = "tracing.sample";
+    public static final String TRACING_ARGS = "tracing.args";
+    /**
+     * Dubbo's parameter of asynchronous references.
+     */
+    static final String ASYNC = "async";
+
+    private static final OperationCache INSTANCE =
+            new OperationCache(TracingConfig.getInt(TracingConfig.CACHE_SIZE, DEFAULT_MAX_SIZE));
+
+    private final ConcurrentMap<Key, OperationMetadata> cache = new ConcurrentHashMap<>();
+    private final ThreadLocal<Key> lookupKey = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+    private final int maxSize;
+
+    OperationCache(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    public static OperationCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param parameters url parameters of the endpoint, only read when the operation is not cached yet.
+     */
+    public OperationMetadata get(String protocol, String host, int port, String path,
+                          String method, Class<?>[] parameterTypes, Map<String, String> parameters) {
+        Key key = lookupKey.get().reset(protocol, host, port, path, method, parameterTypes, parameters);
+        OperationMetadata operation = cache.get(key);
+        if (operation != null) {
+            return operation;
+        }
+
+        operation = create(protocol, host, port, path, method, parameterTypes, parameters);
+        if (cache.size() >= maxSize) {
+            evictOne();
+        }
+        OperationMetadata previous = cache.putIfAbsent(key.copy(), operation);
+        return previous != null ? previous : operation;
+    }
+
+    /**
+     * Remove every method of the endpoint, called when its invoker or exporter is destroyed.
+     */
+    public void evict(String protocol, String host, int port, String path) {
+        Iterator<Key> iterator = cache.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isEndpoint(protocol, host, port, path)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    private void evictOne() {
+        Iterator<Key> iterator = cache.keySet().iterator();
+        if (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static OperationMetadata create(String protocol, String host, int port, String path,
+                                            String method, Class<?>[] parameterTypes,
+                                            Map<String, String> parameters) {
+        String operationName = generateOperationName(path, method, parameterTypes);
+        String sampleRate = getMethodParameter(parameters, method, TRACING_SAMPLE);
+        String captureArguments = getMethodParameter(parameters, method, TRACING_ARGS);
+        return new OperationMetadata(operationName,
+                generateRequestURL(protocol, host, port, operationName),
+                TracingHandler.COMPONENT,
+                CompactPropagation.isAdvertised(parameters),
+                !"false".equalsIgnoreCase(getMethodParameter(parameters, method, TRACING)),
+                parseSampleRate(sampleRate),
+                captureArguments != null ? Boolean.valueOf(captureArguments) : null,
+                "true".equalsIgnoreCase(getMethodParameter(parameters, method, ASYNC)));
+    }
+
+    /**
+     * The parameter of the method if set, like Dubbo's URL.getMethodParameter, else of the service.
+     */
+    private static String getMethodParameter(Map<String, String> parameters, String method, String key) {
+        if (parameters == null) {
+            return null;
+        }
+        String value = parameters.get(method + '.' + key);
+        if (value == null || value.isEmpty()) {
+            value = parameters.get(key);
+        }
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static double parseSampleRate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            double rate = Double.parseDouble(value);
+            return rate >= 0 && rate <= 1 ? rate : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Format operation name. e.g. org.xxx.Test.test(String)
+     *
+     * @return operation name.
+     */
+    static String generateOperationName(String path, String method, Class<?>[] parameterTypes) {
+        StringBuilder operationName = new StringBuilder();
+        operationName.append(path).append('.').append(method).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    operationName.append(',');
+                }
+                operationName.append(parameterTypes[i].getSimpleName());
+            }
+        }
+        operationName.append(')');
+
+        return operationName.toString();
+    }
+
+    /**
+     * Format request url. e.g. dubbo://127.0.0.1:20880/com.xxx.Test.test(String).
+     *
+     * @return request url.
+     */
+    static String generateRequestURL(String protocol, String host, int port, String operationName) {
+        return protocol + "://" + host + ':' + port + '/' + operationName;
+    }
+
+    private static final class Key {
+        private String protocol;
+        private String host;
+        private int port;
+        private String path;
+        private String method;
+        private Class<?>[] parameterTypes;
+        private Map<String, String> parameters;
+        private int hash;
+
+        Key reset(String protocol, String host, int port, String path,
+                  String method, Class<?>[] parameterTypes, Map<String, String> parameters) {
+            this.protocol = protocol;
+            this.host = host;
+            this.port = port;
+            this.path = path;
+            this.method = method;
+            this.parameterTypes = parameterTypes;
+            this.parameters = parameters;
+
+            int h = protocol != null ? protocol.hashCode() : 0;
+            h = 31 * h + (host != null ? host.hashCode() : 0);
+            h = 31 * h + port;
+            h = 31 * h + (path != null ? path.hashCode() : 0);
+            h = 31 * h + (method != null ? method.hashCode() : 0);
+            h = 31 * h + Arrays.hashCode(parameterTypes);
+            h = 31 * h + System.identityHashCode(parameters);
+            this.hash = h;
+            return this;
+        }
+
+        Key copy() {
+            return new Key().reset(protocol, host, port, path, method,
+                    parameterTypes != null ? parameterTypes.clone() : null, parameters);
+        }
+
+        boolean isEndpoint(String protocol, String host, int port, String path) {
+            return this.port == port
+                    && equals(this.path, path)
+                    && equals(this.host, host)
+                    && equals(this.protocol, protocol);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                    && isEndpoint(other.protocol, other.host, other.port, other.path)
+                    && parameters == other.parameters
+                    && equals(method, other.method)
+                    && Arrays.equals(parameterTypes, other.parameterTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Precomputed tag values of one remote method, shared by every call to it.
+ */
+public final class OperationMetadata {
+
+    private final String operationName;
+    private final String requestURL;
+    private final String component;
+    private final boolean compactPropagation;
+    private final boolean tracing;
+    private final double sampleRate;
+    private final Boolean captureArguments;
+    private final boolean async;
+    private volatile ArgumentCapture.Policy argumentPolicy;
+    private volatile OperationMetrics consumerMetrics;
+    private volatile OperationMetrics providerMetrics;
+    private volatile Boolean consumerTraced;
+    private volatile Boolean providerTraced;
+
+    public OperationMetadata(String operationName, String requestURL, String component, boolean compactPropagation) {
+        this(operationName, requestURL, component, compactPropagation, true, -1, null, false);
+    }
+
+    public OperationMetadata(String operationName, String requestURL, String component, boolean compactPropagation,
+                      boolean tracing, double sampleRate, Boolean captureArguments, boolean async) {
+        this.operationName = operationName;
+        this.requestURL = requestURL;
+        this.component = component;
+        this.compactPropagation = compactPropagation;
+        this.tracing = tracing;
+        this.sampleRate = sampleRate;
+        this.captureArguments = captureArguments;
+        this.async = async;
+    }
+
+    /**
+     * e.g. org.xxx.Test.test(String)
+     */
+    public String getOperationName() {
+        return operationName;
+    }
+
+    /**
+     * e.g. dubbo://127.0.0.1:20880/org.xxx.Test.test(String)
+     */
+    String getRequestURL() {
+        return requestURL;
+    }
+
+    String getComponent() {
+        return component;
+    }
+
+    /**
+     * Whether the provider advertises {@link CompactPropagation}.
+     */
+    boolean isCompactPropagation() {
+        return compactPropagation;
+    }
+
+    /**
+     * False when tracing is turned off for the method with the tracing url parameter.
+     */
+    boolean isTracing() {
+        return tracing;
+    }
+
+    /**
+     * Fraction of new traces sampled, from the tracing.sample url parameter, or -1 to use the sampler.
+     */
+    double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * From the tracing.args url parameter: true to tag arguments of successful calls too, false to never tag
+     * them, null to follow the configuration.
+     */
+    Boolean getCaptureArguments() {
+        return captureArguments;
+    }
+
+    /**
+     * From the async url parameter, read once instead of with RpcUtils.isAsync, which concatenates the method
+     * and the key on every call.
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Resolved on first use, null until then.
+     */
+    ArgumentCapture.Policy getArgumentPolicy() {
+        return argumentPolicy;
+    }
+
+    void setArgumentPolicy(ArgumentCapture.Policy argumentPolicy) {
+        this.argumentPolicy = argumentPolicy;
+    }
+
+    /**
+     * Resolved on first use, null until then.
+     */
+    OperationMetrics getMetrics(boolean isConsumer) {
+        return isConsumer ? consumerMetrics : providerMetrics;
+    }
+
+    void setMetrics(boolean isConsumer, OperationMetrics metrics) {
+        if (isConsumer) {
+            consumerMetrics = metrics;
+        } else {
+            providerMetrics = metrics;
+        }
+    }
+
+    /**
+     * Decision of the {@link TracingRules}, null until resolved.
+     */
+    Boolean getTraced(boolean isConsumer) {
+        return isConsumer ? consumerTraced : providerTraced;
+    }
+
+    void setTraced(boolean isConsumer, Boolean traced) {
+        if (isConsumer) {
+            consumerTraced = traced;
+        } else {
+            providerTraced = traced;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return requestURL;
+    }
+}
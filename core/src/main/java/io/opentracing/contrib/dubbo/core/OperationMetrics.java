@@ -0,0 +1,161 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Calls, errors and latency of one operation on one side, recorded without allocation.
+ */
+public final class OperationMetrics {
+
+    public static final String CONSUMER = "consumer";
+    public static final String PROVIDER = "provider";
+
+    private final String operationName;
+    private final String side;
+    private final StripedCounter calls = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final StripedCounter totalMicros = new StripedCounter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile PayloadMetrics payload;
+    private volatile TraceStore traces;
+
+    OperationMetrics(String operationName, String side) {
+        this.operationName = operationName;
+        this.side = side;
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    String getSide() {
+        return side;
+    }
+
+    public void record(long durationNanos, boolean error) {
+        long micros = durationNanos / 1000;
+        calls.increment();
+        if (error) {
+            errors.increment();
+        }
+        totalMicros.add(micros);
+        latency.record(micros);
+    }
+
+    /**
+     * Created on first use, so operations never measured by the codec do not hold its histograms.
+     */
+    public PayloadMetrics getPayload() {
+        PayloadMetrics payload = this.payload;
+        if (payload == null) {
+            synchronized (this) {
+                payload = this.payload;
+                if (payload == null) {
+                    payload = new PayloadMetrics(operationName, side);
+                    this.payload = payload;
+                }
+            }
+        }
+        return payload;
+    }
+
+    /**
+     * Null until the codec measured a call.
+     */
+    public PayloadMetrics.Snapshot payloadSnapshot(boolean reset) {
+        PayloadMetrics payload = this.payload;
+        return payload != null ? payload.snapshot(reset) : null;
+    }
+
+    /**
+     * Created on first use, when the calls are stored.
+     */
+    public TraceStore getTraces() {
+        TraceStore traces = this.traces;
+        if (traces == null) {
+            synchronized (this) {
+                traces = this.traces;
+                if (traces == null) {
+                    traces = new TraceStore(operationName, side);
+                    this.traces = traces;
+                }
+            }
+        }
+        return traces;
+    }
+
+    /**
+     * Null until a call was stored.
+     */
+    TraceStore traces() {
+        return traces;
+    }
+
+    public Snapshot snapshot(boolean reset) {
+        if (reset) {
+            return new Snapshot(operationName, side, calls.sumThenReset(), errors.sumThenReset(),
+                    totalMicros.sumThenReset(), latency.snapshot(true));
+        }
+        return new Snapshot(operationName, side, calls.sum(), errors.sum(), totalMicros.sum(),
+                latency.snapshot(false));
+    }
+
+    /**
+     * The metrics of an operation at some point, or since the previous reset.
+     */
+    public static final class Snapshot {
+        private final String operationName;
+        private final String side;
+        private final long calls;
+        private final long errors;
+        private final long totalMicros;
+        private final long[] latencyCounts;
+
+        Snapshot(String operationName, String side, long calls, long errors, long totalMicros,
+                 long[] latencyCounts) {
+            this.operationName = operationName;
+            this.side = side;
+            this.calls = calls;
+            this.errors = errors;
+            this.totalMicros = totalMicros;
+            this.latencyCounts = latencyCounts;
+        }
+
+        String getOperationName() {
+            return operationName;
+        }
+
+        String getSide() {
+            return side;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        long getTotalMicros() {
+            return totalMicros;
+        }
+
+        /**
+         * Upper bound of the latency of the given percentage of calls, in microseconds.
+         */
+        long getLatencyPercentile(double percentile) {
+            return LatencyHistogram.percentile(latencyCounts, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return side + ' ' + operationName
+                    + " calls=" + calls
+                    + " errors=" + errors
+                    + " avg=" + (calls > 0 ? totalMicros / calls : 0) + "us"
+                    + " p50=" + getLatencyPercentile(50) + "us"
+                    + " p90=" + getLatencyPercentile(90) + "us"
+                    + " p99=" + getLatencyPercentile(99) + "us"
+                    + " max=" + getLatencyPercentile(100) + "us";
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import io.opentracing.Tracer;
+
+/**
+ * Samples fewer new traces while tracing costs more than its budget, and none at the last step, so the filter does
+ * not add to an overload. Every period, the share of the call time spent by the filter,
+ * the fill of the reporter queue and the call rate are compared to their budgets: one step down when any is
+ * exceeded, one step back up after a few periods with all of them below half of their budget.
+ * <p>
+ * Only new traces are throttled, calls of traces sampled upstream keep their spans at every step, so that the
+ * traces crossing the process are not cut.
+ */
+class OverheadGovernor implements Sampler, OverheadGovernorMBean {
+    private static final Logger log = LoggerFactory.getLogger(OverheadGovernor.class);
+
+    static final String OBJECT_NAME = "io.opentracing.contrib.dubbo:type=OverheadGovernor";
+
+    static final double DEFAULT_MAX_OVERHEAD = 0.02;
+    static final double DEFAULT_MAX_QUEUE = 0.5;
+    static final long DEFAULT_INTERVAL_MILLIS = 1000;
+    static final int DEFAULT_RECOVERY_PERIODS = 5;
+
+    /**
+     * Fraction of new traces still sampled at each step, none at the last one.
+     */
+    static final double[] RATES = {1, 0.5, 0.25, 0.1, 0.01, 0};
+
+    private final Sampler delegate;
+    private final TracingMetrics metrics;
+    private final AsyncReporter reporter;
+    private final double maxOverhead;
+    private final double maxQueue;
+    private final long maxCallRate;
+    private final int recoveryPeriods;
+
+    private volatile int step;
+    private final AtomicLong stepsDown = new AtomicLong();
+    private final AtomicLong stepsUp = new AtomicLong();
+
+    /**
+     * Only touched by the evaluating thread.
+     */
+    private int healthyPeriods;
+    private long lastCalls;
+    private long lastOverheadNanos;
+    private long lastCallNanos;
+
+    /**
+     * @param reporter the reporter whose queue is watched, null when spans are reported synchronously.
+     * @param maxCallRate calls per second on both sides, 0 for no limit.
+     */
+    OverheadGovernor(Sampler delegate, TracingMetrics metrics, AsyncReporter reporter,
+                     double maxOverhead, double maxQueue, long maxCallRate, int recoveryPeriods) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.reporter = reporter;
+        this.maxOverhead = maxOverhead;
+        this.maxQueue = maxQueue;
+        this.maxCallRate = maxCallRate;
+        this.recoveryPeriods = Math.max(1, recoveryPeriods);
+    }
+
+    /**
+     * The governor of every filter in the process, started once on first use with the configured sampler. It
+     * watches the process wide metrics and the reporter of the {@link TracerHolder} tracer. Null when the metrics
+     * are disabled.
+     */
+    static OverheadGovernor get() {
+        return Holder.GOVERNOR;
+    }
+
+    private static OverheadGovernor resolve() {
+        if (!TracingConfig.getBoolean(TracingConfig.METRICS, true)) {
+            log.warn("The tracing overhead governor requires the metrics, it is disabled");
+            return null;
+        }
+        Tracer tracer = TracerHolder.get();
+        AsyncReporter reporter = tracer instanceof AsyncReportingTracer
+                ? ((AsyncReportingTracer) tracer).getReporter() : null;
+        return new OverheadGovernor(TracingHandler.resolveSampler(), TracingMetrics.getInstance(), reporter,
+                TracingConfig.getDouble(TracingConfig.GOVERNOR_MAX_OVERHEAD, DEFAULT_MAX_OVERHEAD),
+                TracingConfig.getDouble(TracingConfig.GOVERNOR_MAX_QUEUE, DEFAULT_MAX_QUEUE),
+                TracingConfig.getLong(TracingConfig.GOVERNOR_MAX_RATE, 0),
+                TracingConfig.getInt(TracingConfig.GOVERNOR_RECOVERY, DEFAULT_RECOVERY_PERIODS))
+                .start(TracingConfig.getLong(TracingConfig.GOVERNOR_INTERVAL, DEFAULT_INTERVAL_MILLIS));
+    }
+
+    @Override
+    public boolean isSampled(String operationName) {
+        return admit() && delegate.isSampled(operationName);
+    }
+
+    /**
+     * Draw at the rate of the current step, for new traces sampled without the delegate.
+     */
+    boolean admit() {
+        double rate = RATES[step];
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Evaluate the budgets every interval on a daemon thread, and register the MBean.
+     */
+    OverheadGovernor start(final long intervalMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "opentracing-dubbo-governor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    evaluate(TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+                } catch (RuntimeException e) {
+                    log.warn("Failed to evaluate the tracing overhead", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, OverheadGovernorMBean.class), new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            log.warn("Failed to register the tracing overhead governor MBean", e);
+        }
+        return this;
+    }
+
+    private void evaluate(long periodNanos) {
+        FilterOverhead consumer = metrics.getOverhead(true);
+        FilterOverhead provider = metrics.getOverhead(false);
+        long calls = consumer.getCalls() + provider.getCalls();
+        long overheadNanos = consumer.getTotalNanos() + provider.getTotalNanos();
+        long callNanos = consumer.getTotalCallNanos() + provider.getTotalCallNanos();
+        double queue = reporter != null ? (double) reporter.getQueueDepth() / reporter.getCapacity() : 0;
+
+        long periodCalls = calls - lastCalls;
+        long periodOverheadNanos = overheadNanos - lastOverheadNanos;
+        long periodCallNanos = callNanos - lastCallNanos;
+        lastCalls = calls;
+        lastOverheadNanos = overheadNanos;
+        lastCallNanos = callNanos;
+        if (periodCalls < 0 || periodOverheadNanos < 0 || periodCallNanos < 0) {
+            // the metrics were reset meanwhile
+            return;
+        }
+
+        double overhead = periodCallNanos > 0 ? (double) periodOverheadNanos / periodCallNanos : 0;
+        double callRate = (double) periodCalls * TimeUnit.SECONDS.toNanos(1) / periodNanos;
+        evaluate(overhead, queue, callRate);
+    }
+
+    /**
+     * Step down or up from the figures of the last period.
+     *
+     * @param overhead share of the call time spent by the filter.
+     * @param queue fill of the reporter queue, from 0 to 1.
+     * @param callRate calls per second.
+     */
+    void evaluate(double overhead, double queue, double callRate) {
+        boolean exceeded = overhead > maxOverhead
+                || queue > maxQueue
+                || (maxCallRate > 0 && callRate > maxCallRate);
+        boolean healthy = overhead <= maxOverhead / 2
+                && queue <= maxQueue / 2
+                && (maxCallRate <= 0 || callRate <= maxCallRate / 2);
+
+        int current = step;
+        if (exceeded) {
+            healthyPeriods = 0;
+            if (current < RATES.length - 1) {
+                step = current + 1;
+                stepsDown.incrementAndGet();
+                log.warn("Tracing over budget (overhead {}%, reporter queue {}%, {} calls/s), sampling {}% of new "
+                                + "traces", percent(overhead), percent(queue), (long) callRate,
+                        percent(RATES[current + 1]));
+            }
+        } else if (healthy && current > 0) {
+            if (++healthyPeriods >= recoveryPeriods) {
+                healthyPeriods = 0;
+                step = current - 1;
+                stepsUp.incrementAndGet();
+                log.info("Tracing back under budget (overhead {}%, reporter queue {}%, {} calls/s), sampling {}% "
+                                + "of new traces", percent(overhead), percent(queue), (long) callRate,
+                        percent(RATES[current - 1]));
+            }
+        } else {
+            healthyPeriods = 0;
+        }
+    }
+
+    private static String percent(double ratio) {
+        return String.format("%.2f", ratio * 100);
+    }
+
+    @Override
+    public int getStep() {
+        return step;
+    }
+
+    @Override
+    public double getSampleRate() {
+        return RATES[step];
+    }
+
+    @Override
+    public long getStepsDown() {
+        return stepsDown.get();
+    }
+
+    @Override
+    public long getStepsUp() {
+        return stepsUp.get();
+    }
+
+    @Override
+    public String toString() {
+        return "governed(" + delegate + ")";
+    }
+
+    /**
+     * Resolved by the class initialization on the first {@link #get()}, which the JVM runs once.
+     */
+    private static final class Holder {
+        static final OverheadGovernor GOVERNOR = resolve();
+    }
+}
@@ -0,0 +1,21 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * JMX view of {@link OverheadGovernor}, registered as io.opentracing.contrib.dubbo:type=OverheadGovernor.
+ */
+public interface OverheadGovernorMBean {
+
+    /**
+     * 0 when tracing runs as configured, one more for each step down.
+     */
+    int getStep();
+
+    /**
+     * Fraction of new traces still sampled.
+     */
+    double getSampleRate();
+
+    long getStepsDown();
+
+    long getStepsUp();
+}
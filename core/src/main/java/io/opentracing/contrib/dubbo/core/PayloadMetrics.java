@@ -0,0 +1,81 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Request and response sizes of one operation on one side, in bytes, and the time spent encoding and decoding its
+ * calls, in microseconds. Recorded when the {@code TracingCodecWrapper} measured them.
+ */
+public final class PayloadMetrics {
+
+    private final String operationName;
+    private final String side;
+    private final LatencyHistogram requestBytes = new LatencyHistogram();
+    private final LatencyHistogram responseBytes = new LatencyHistogram();
+    private final LatencyHistogram serializationMicros = new LatencyHistogram();
+
+    PayloadMetrics(String operationName, String side) {
+        this.operationName = operationName;
+        this.side = side;
+    }
+
+    /**
+     * Each value is -1 when it was not measured.
+     */
+    public void record(long requestBytes, long responseBytes, long serializationNanos) {
+        if (requestBytes >= 0) {
+            this.requestBytes.record(requestBytes);
+        }
+        if (responseBytes >= 0) {
+            this.responseBytes.record(responseBytes);
+        }
+        if (serializationNanos >= 0) {
+            serializationMicros.record(serializationNanos / 1000);
+        }
+    }
+
+    public Snapshot snapshot(boolean reset) {
+        return new Snapshot(operationName, side, requestBytes.snapshot(reset), responseBytes.snapshot(reset),
+                serializationMicros.snapshot(reset));
+    }
+
+    public static final class Snapshot {
+        private final String operationName;
+        private final String side;
+        private final long[] requestBytes;
+        private final long[] responseBytes;
+        private final long[] serializationMicros;
+
+        Snapshot(String operationName, String side, long[] requestBytes, long[] responseBytes,
+                 long[] serializationMicros) {
+            this.operationName = operationName;
+            this.side = side;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.serializationMicros = serializationMicros;
+        }
+
+        public long getRequestBytesPercentile(double percentile) {
+            return LatencyHistogram.percentile(requestBytes, percentile);
+        }
+
+        public long getResponseBytesPercentile(double percentile) {
+            return LatencyHistogram.percentile(responseBytes, percentile);
+        }
+
+        public long getSerializationPercentile(double percentile) {
+            return LatencyHistogram.percentile(serializationMicros, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return side + ' ' + operationName
+                    + " request p50=" + getRequestBytesPercentile(50) + "B"
+                    + " p99=" + getRequestBytesPercentile(99) + "B"
+                    + " max=" + getRequestBytesPercentile(100) + "B"
+                    + " response p50=" + getResponseBytesPercentile(50) + "B"
+                    + " p99=" + getResponseBytesPercentile(99) + "B"
+                    + " max=" + getResponseBytesPercentile(100) + "B"
+                    + " serialization p50=" + getSerializationPercentile(50) + "us"
+                    + " p99=" + getSerializationPercentile(99) + "us";
+        }
+    }
+}
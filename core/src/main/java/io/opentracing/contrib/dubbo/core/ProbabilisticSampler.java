@@ -0,0 +1,30 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sample a fixed fraction of the traces, e.g. 0.01 for one trace in a hundred.
+ */
+class ProbabilisticSampler implements Sampler {
+
+    static final String TYPE = "probabilistic";
+
+    private final double samplingRate;
+
+    ProbabilisticSampler(double samplingRate) {
+        if (samplingRate < 0 || samplingRate > 1) {
+            throw new IllegalArgumentException("sampling rate must be between 0.0 and 1.0, was " + samplingRate);
+        }
+        this.samplingRate = samplingRate;
+    }
+
+    @Override
+    public boolean isSampled(String operationName) {
+        return samplingRate >= 1 || (samplingRate > 0 && ThreadLocalRandom.current().nextDouble() < samplingRate);
+    }
+
+    @Override
+    public String toString() {
+        return TYPE + "(" + samplingRate + ")";
+    }
+}
@@ -0,0 +1,60 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Time calls spend in the queue of the provider's thread pool, from their receipt on the IO thread to the filter,
+ * in microseconds. Recorded when the {@code TracingDispatcherWrapper} stamps the received calls.
+ */
+public final class QueueWait {
+
+    private final StripedCounter calls = new StripedCounter();
+    private final StripedCounter totalMicros = new StripedCounter();
+    private final LatencyHistogram micros = new LatencyHistogram();
+
+    public void record(long waitMicros) {
+        calls.increment();
+        totalMicros.add(waitMicros);
+        micros.record(waitMicros);
+    }
+
+    public Snapshot snapshot(boolean reset) {
+        if (reset) {
+            return new Snapshot(calls.sumThenReset(), totalMicros.sumThenReset(), micros.snapshot(true));
+        }
+        return new Snapshot(calls.sum(), totalMicros.sum(), micros.snapshot(false));
+    }
+
+    public static final class Snapshot {
+        private final long calls;
+        private final long totalMicros;
+        private final long[] counts;
+
+        Snapshot(long calls, long totalMicros, long[] counts) {
+            this.calls = calls;
+            this.totalMicros = totalMicros;
+            this.counts = counts;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        long getTotalMicros() {
+            return totalMicros;
+        }
+
+        long getPercentileMicros(double percentile) {
+            return LatencyHistogram.percentile(counts, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return "provider queue wait"
+                    + " calls=" + calls
+                    + " avg=" + (calls > 0 ? totalMicros / calls : 0) + "us"
+                    + " p50=" + getPercentileMicros(50) + "us"
+                    + " p90=" + getPercentileMicros(90) + "us"
+                    + " p99=" + getPercentileMicros(99) + "us"
+                    + " max=" + getPercentileMicros(100) + "us";
+        }
+    }
+}
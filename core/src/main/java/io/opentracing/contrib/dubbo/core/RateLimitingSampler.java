@@ -0,0 +1,74 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sample at most a number of traces per second for each operation, with a token bucket per operation.
+ */
+class RateLimitingSampler implements Sampler {
+
+    static final String TYPE = "ratelimiting";
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final double tracesPerSecond;
+
+    RateLimitingSampler(double tracesPerSecond) {
+        if (tracesPerSecond < 0) {
+            throw new IllegalArgumentException("traces per second must not be negative, was " + tracesPerSecond);
+        }
+        this.tracesPerSecond = tracesPerSecond;
+    }
+
+    @Override
+    public boolean isSampled(String operationName) {
+        if (tracesPerSecond == 0) {
+            return false;
+        }
+
+        TokenBucket bucket = buckets.get(operationName);
+        if (bucket == null) {
+            bucket = new TokenBucket(tracesPerSecond);
+            TokenBucket previous = buckets.putIfAbsent(operationName, bucket);
+            if (previous != null) {
+                bucket = previous;
+            }
+        }
+        return bucket.tryAcquire(System.nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        return TYPE + "(" + tracesPerSecond + ")";
+    }
+
+    /**
+     * Lock-free token bucket, tracking the time at which the bucket is empty again (GCRA).
+     */
+    static final class TokenBucket {
+        private final long interval;
+        private final long capacity;
+        private final AtomicLong emptyAt;
+
+        TokenBucket(double tokensPerSecond) {
+            this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+            this.capacity = interval * Math.max(1, (long) tokensPerSecond);
+            this.emptyAt = new AtomicLong(System.nanoTime() - capacity);
+        }
+
+        boolean tryAcquire(long now) {
+            for (; ; ) {
+                long current = emptyAt.get();
+                long next = (current - now < 0 ? now : current) + interval;
+                if (next - now > capacity) {
+                    return false;
+                }
+                if (emptyAt.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Head-based sampling decision for traces started by the filter. A decision is only taken for a new trace: a
+ * consumer inside an active span, or a provider called with a propagated context, follows its parent.
+ * <p>
+ * Custom implementations need a public no-arg constructor and are selected with
+ * -Ddubbo.tracing.sampler=org.xxx.MySampler.
+ */
+public interface Sampler {
+
+    /**
+     * @param operationName e.g. org.xxx.Test.test(String)
+     * @return whether the new trace is sampled.
+     */
+    boolean isSampled(String operationName);
+}
@@ -0,0 +1,11 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Activation of a span on the current thread, as the Scope of OpenTracing 0.31. Closing it restores the span
+ * active before, and never finishes the span.
+ */
+interface Scope extends AutoCloseable {
+
+    @Override
+    void close();
+}
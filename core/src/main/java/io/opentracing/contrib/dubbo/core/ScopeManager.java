@@ -0,0 +1,18 @@
+package io.opentracing.contrib.dubbo.core;
+
+import io.opentracing.BaseSpan;
+import io.opentracing.Span;
+
+/**
+ * Activates the spans of calls on their thread, as the ScopeManager of OpenTracing 0.31. The spans are finished
+ * by the filter rather than on deactivation, so an asynchronous call just finishes its span from another thread.
+ */
+interface ScopeManager {
+
+    Scope activate(Span span);
+
+    /**
+     * The span active on the current thread, null when there is none.
+     */
+    BaseSpan<?> activeSpan();
+}
@@ -0,0 +1,56 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over cells picked by thread, so that threads counting at the same time rarely update the same
+ * cache line. Cells are eight longs apart.
+ */
+final class StripedCounter {
+
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 16;
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void add(long value) {
+        cells.getAndAdd(index(), value);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Sum and reset every cell. Values added meanwhile are either in the sum or left for the next one.
+     */
+    long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.getAndSet(i * PADDING, 0);
+        }
+        return sum;
+    }
+
+    private static int index() {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (id >>> 32) & (STRIPES - 1)) * PADDING;
+    }
+}
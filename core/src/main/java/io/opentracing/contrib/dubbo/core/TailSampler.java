@@ -0,0 +1,124 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.opentracing.Tracer;
+
+/**
+ * Tail-based sampling of the spans created by the filter. The spans of a local trace are held in a
+ * {@link TraceBuffer}, started on the tracer only when needed, and their tags are only set when the trace is kept:
+ * when its local root finishes, the trace is reported if it took longer than the latency threshold or had an
+ * error, and dropped otherwise. Buffers are
+ * reused through a small lock-free pool.
+ * <p>
+ * Spans started by application code are reported by the tracer as usual.
+ */
+class TailSampler {
+
+    static final long DEFAULT_LATENCY_MILLIS = 1000;
+    static final int DEFAULT_CAPACITY = 64;
+    static final int POOL_SIZE = 64;
+
+    private final long latencyThresholdNanos;
+    private final int capacity;
+    private final AtomicReferenceArray<TraceBuffer> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private final AtomicLong keptTraces = new AtomicLong();
+    private final AtomicLong droppedTraces = new AtomicLong();
+    private final AtomicLong overflowedSpans = new AtomicLong();
+
+    TailSampler(long latencyThresholdMillis, int capacity) {
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.capacity = Math.max(2, capacity);
+    }
+
+    /**
+     * Start a span that is reported only if its trace is kept. The span joins the trace buffered on this thread,
+     * or becomes the local root of a new one. The builder must have its parent set, since the span may be started
+     * on the tracer later, under another active span.
+     */
+    TraceBuffer.BufferedSpan start(Tracer.SpanBuilder spanBuilder, TraceBuffer.Materializer materializer) {
+        long startNanos = System.nanoTime();
+        long startMicros = MicrosClock.nowMicros();
+
+        TracingContext context = TracingContext.get();
+        TraceBuffer buffer = context.getTraceBuffer();
+        boolean root = buffer == null;
+        if (root) {
+            buffer = acquire();
+            context.setTraceBuffer(buffer);
+        }
+        TraceBuffer.BufferedSpan bufferedSpan = new TraceBuffer.BufferedSpan(spanBuilder.ignoreActiveSpan(), buffer,
+                root, materializer, startMicros, startNanos);
+        buffer.add(bufferedSpan);
+        return bufferedSpan;
+    }
+
+    /**
+     * Called when the span is no longer active on the thread that started it. The next span started on this
+     * thread after its local root begins a new trace.
+     */
+    void deactivated(TraceBuffer.BufferedSpan span) {
+        if (span.isRoot()) {
+            TracingContext context = TracingContext.get();
+            if (context.getTraceBuffer() == span.getBuffer()) {
+                context.setTraceBuffer(null);
+            }
+            span.getBuffer().rootDeactivated();
+        }
+    }
+
+    private TraceBuffer acquire() {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int index = (start + i) & (POOL_SIZE - 1);
+            TraceBuffer buffer = pool.get(index);
+            if (buffer != null && pool.compareAndSet(index, buffer, null)) {
+                return buffer;
+            }
+        }
+        return new TraceBuffer(this, capacity);
+    }
+
+    /**
+     * Called by a buffer that can be reused, it is left to the garbage collector when the pool is full.
+     */
+    void recycle(TraceBuffer buffer) {
+        int start = (int) Thread.currentThread().getId();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.compareAndSet((start + i) & (POOL_SIZE - 1), null, buffer)) {
+                return;
+            }
+        }
+    }
+
+    boolean isKept(long durationNanos, boolean error) {
+        return error || durationNanos >= latencyThresholdNanos;
+    }
+
+    void traceKept() {
+        keptTraces.incrementAndGet();
+    }
+
+    void traceDropped() {
+        droppedTraces.incrementAndGet();
+    }
+
+    void spanOverflowed() {
+        overflowedSpans.incrementAndGet();
+    }
+
+    long getKeptTraces() {
+        return keptTraces.get();
+    }
+
+    long getDroppedTraces() {
+        return droppedTraces.get();
+    }
+
+    long getOverflowedSpans() {
+        return overflowedSpans.get();
+    }
+}
@@ -0,0 +1,59 @@
+package io.opentracing.contrib.dubbo.core;
+
+import io.opentracing.BaseSpan;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+/**
+ * {@link ScopeManager} keeping the spans of calls in a thread local of its own, without the tracer's
+ * ActiveSpanSource: activating writes the thread local once and allocates the scope, closing writes it once, and
+ * nothing is reference counted.
+ * <p>
+ * Calls still become children of the spans the application activated with the tracer, but application code served
+ * by a provider no longer finds the span of the call with {@link Tracer#activeSpan()}. Enabled with
+ * -Ddubbo.tracing.scope=thread_local.
+ */
+class ThreadLocalScopeManager implements ScopeManager {
+
+    static final String TYPE = "thread_local";
+
+    private final Tracer tracer;
+    private final ThreadLocal<ThreadLocalScope> current = new ThreadLocal<>();
+
+    ThreadLocalScopeManager(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Scope activate(Span span) {
+        ThreadLocalScope scope = new ThreadLocalScope(span, current.get());
+        current.set(scope);
+        return scope;
+    }
+
+    /**
+     * The span of the innermost call on this thread, else the span the application activated.
+     */
+    @Override
+    public BaseSpan<?> activeSpan() {
+        ThreadLocalScope scope = current.get();
+        return scope != null ? scope.span : tracer.activeSpan();
+    }
+
+    private final class ThreadLocalScope implements Scope {
+        private final Span span;
+        private final ThreadLocalScope previous;
+
+        ThreadLocalScope(Span span, ThreadLocalScope previous) {
+            this.span = span;
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (current.get() == this) {
+                current.set(previous);
+            }
+        }
+    }
+}
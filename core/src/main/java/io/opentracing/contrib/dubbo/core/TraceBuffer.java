@@ -0,0 +1,271 @@
+package io.opentracing.contrib.dubbo.core;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+
+/**
+ * Bounded buffer of the spans of one local trace, waiting for the tail sampling decision. When it is full the
+ * oldest span after the root is overwritten.
+ * <p>
+ * Spans are only started on the tracer when first needed: when their context is propagated or given a child, or
+ * when their trace is kept. Spans that are not reported, those of dropped traces and those overwritten, are
+ * abandoned: never finished, so never recorded, and most of them never started. Once the decision is made, its
+ * root deactivated and every span reported or abandoned, the buffer goes back to the pool of its
+ * {@link TailSampler}.
+ */
+class TraceBuffer {
+
+    private final TailSampler sampler;
+    private final BufferedSpan[] spans;
+    /**
+     * The finished spans taken by the decision, only used by the thread finishing the root.
+     */
+    private final BufferedSpan[] decidedSpans;
+    private int size;
+    private int next = 1;
+    /**
+     * Spans added and neither reported nor abandoned yet.
+     */
+    private int pending;
+    private boolean error;
+    private boolean decided;
+    private boolean kept;
+    private boolean rootActive;
+
+    TraceBuffer(TailSampler sampler, int capacity) {
+        this.sampler = sampler;
+        this.spans = new BufferedSpan[capacity];
+        this.decidedSpans = new BufferedSpan[capacity];
+    }
+
+    synchronized void add(BufferedSpan span) {
+        pending++;
+        if (decided) {
+            return;
+        }
+        if (span.isRoot()) {
+            spans[0] = span;
+            size = Math.max(size, 1);
+            rootActive = true;
+        } else if (size < spans.length) {
+            spans[size++] = span;
+        } else {
+            BufferedSpan overwritten = spans[next];
+            spans[next] = span;
+            next = next + 1 < spans.length ? next + 1 : 1;
+            sampler.spanOverflowed();
+            overwritten.overwritten = true;
+            if (overwritten.isFinished() && !overwritten.released) {
+                overwritten.released = true;
+                pending--;
+            }
+        }
+    }
+
+    void finished(BufferedSpan span) {
+        if (span.isRoot()) {
+            int count = 0;
+            synchronized (this) {
+                decided = true;
+                kept = sampler.isKept(span.getDurationNanos(), error || span.isError());
+                for (int i = 0; i < size; i++) {
+                    BufferedSpan bufferedSpan = spans[i];
+                    spans[i] = null;
+                    if (bufferedSpan != null && bufferedSpan.isFinished() && !bufferedSpan.released) {
+                        bufferedSpan.released = true;
+                        decidedSpans[count++] = bufferedSpan;
+                    }
+                }
+                size = 0;
+            }
+            if (kept) {
+                sampler.traceKept();
+            } else {
+                sampler.traceDropped();
+            }
+            for (int i = 0; i < count; i++) {
+                BufferedSpan bufferedSpan = decidedSpans[i];
+                decidedSpans[i] = null;
+                if (kept) {
+                    bufferedSpan.report();
+                }
+            }
+            released(count);
+            return;
+        }
+
+        boolean report;
+        synchronized (this) {
+            error |= span.isError();
+            if (span.released || !(decided || span.overwritten)) {
+                return;
+            }
+            span.released = true;
+            report = decided && (kept || span.isError());
+        }
+        if (report) {
+            span.report();
+        }
+        released(1);
+    }
+
+    /**
+     * Called when the root is no longer active on the thread that started it, no span is added afterwards.
+     */
+    void rootDeactivated() {
+        boolean recycle;
+        synchronized (this) {
+            rootActive = false;
+            recycle = reset();
+        }
+        if (recycle) {
+            sampler.recycle(this);
+        }
+    }
+
+    private void released(int count) {
+        boolean recycle;
+        synchronized (this) {
+            pending -= count;
+            recycle = reset();
+        }
+        if (recycle) {
+            sampler.recycle(this);
+        }
+    }
+
+    /**
+     * Clears the buffer once it is done with, under its lock.
+     *
+     * @return whether it was cleared, and can be reused.
+     */
+    private boolean reset() {
+        if (!decided || rootActive || pending > 0) {
+            return false;
+        }
+        next = 1;
+        error = false;
+        decided = false;
+        kept = false;
+        return true;
+    }
+
+    /**
+     * Sets the deferred tags and logs of a span, just before it is reported.
+     */
+    interface Materializer {
+        void materialize(Span span);
+    }
+
+    /**
+     * Span whose finish is recorded in the buffer, and only forwarded when the trace is kept.
+     */
+    static class BufferedSpan extends ForwardingSpan {
+        private final TraceBuffer buffer;
+        private final boolean root;
+        private final Materializer materializer;
+        private final long startMicros;
+        private final long startNanos;
+        /**
+         * Guarded by this span, cleared once started.
+         */
+        private Tracer.SpanBuilder spanBuilder;
+        private volatile Span started;
+        private volatile boolean error;
+        private volatile long durationNanos = -1;
+        /**
+         * Guarded by the lock of the buffer.
+         */
+        private boolean overwritten;
+        private boolean released;
+
+        BufferedSpan(Tracer.SpanBuilder spanBuilder, TraceBuffer buffer, boolean root, Materializer materializer,
+                     long startMicros, long startNanos) {
+            super(null);
+            this.spanBuilder = spanBuilder;
+            this.buffer = buffer;
+            this.root = root;
+            this.materializer = materializer;
+            this.startMicros = startMicros;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * The span started on the tracer, at its original start time, the first time it is needed.
+         */
+        @Override
+        Span getDelegate() {
+            Span span = started;
+            return span != null ? span : start();
+        }
+
+        private synchronized Span start() {
+            if (started == null) {
+                started = spanBuilder.withStartTimestamp(startMicros).startManual();
+                spanBuilder = null;
+            }
+            return started;
+        }
+
+        boolean isStarted() {
+            return started != null;
+        }
+
+        TraceBuffer getBuffer() {
+            return buffer;
+        }
+
+        boolean isRoot() {
+            return root;
+        }
+
+        boolean isError() {
+            return error;
+        }
+
+        void markError() {
+            error = true;
+        }
+
+        boolean isFinished() {
+            return durationNanos >= 0;
+        }
+
+        long getDurationNanos() {
+            return durationNanos;
+        }
+
+        @Override
+        public Span setTag(String key, boolean value) {
+            if (value && Tags.ERROR.getKey().equals(key)) {
+                error = true;
+            }
+            return super.setTag(key, value);
+        }
+
+        @Override
+        public void finish() {
+            if (isFinished()) {
+                return;
+            }
+            durationNanos = System.nanoTime() - startNanos;
+            buffer.finished(this);
+        }
+
+        @Override
+        public void finish(long finishMicros) {
+            if (isFinished()) {
+                return;
+            }
+            durationNanos = Math.max(0, (finishMicros - startMicros) * 1000);
+            buffer.finished(this);
+        }
+
+        void report() {
+            Span span = getDelegate();
+            materializer.materialize(span);
+            span.finish(startMicros + durationNanos / 1000);
+        }
+    }
+}
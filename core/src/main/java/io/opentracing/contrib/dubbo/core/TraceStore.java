@@ -0,0 +1,276 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+
+/**
+ * The last calls, the last failed calls and the slowest calls of one operation on one side, kept in process so
+ * that they can be looked at on the node when spans are not exported, see {@code TracingTelnetHandler}.
+ * <p>
+ * Recording allocates nothing: the calls are written field by field into slots allocated up front, the recent
+ * calls in rings written in turn, the slowest calls in a few slots where a slower call replaces the fastest one.
+ * Calls faster than every slowest one are rejected with a volatile read. A slot is guarded by a sequence number,
+ * odd while it is written, so a writer finding it busy drops its call and a reader retries or skips it. The span
+ * context is kept as is and its ids are rendered when the entries are read.
+ */
+public final class TraceStore {
+
+    static final int DEFAULT_RECENT = 32;
+    static final int DEFAULT_SLOWEST = 8;
+
+    private static final int RECENT = TracingConfig.getInt(TracingConfig.STORE_RECENT, DEFAULT_RECENT);
+    private static final int SLOWEST = TracingConfig.getInt(TracingConfig.STORE_SLOWEST, DEFAULT_SLOWEST);
+
+    private final String operationName;
+    private final String side;
+    private final Slot[] recent;
+    private final AtomicLong recentCount = new AtomicLong();
+    private final Slot[] errors;
+    private final AtomicLong errorCount = new AtomicLong();
+    private final Slot[] slowest;
+    /**
+     * Duration of the fastest of the slowest calls once every slot is taken.
+     */
+    private volatile long slowestMinMicros = -1;
+
+    TraceStore(String operationName, String side) {
+        this(operationName, side, RECENT, SLOWEST);
+    }
+
+    TraceStore(String operationName, String side, int recent, int slowest) {
+        this.operationName = operationName;
+        this.side = side;
+        this.recent = newSlots(recent);
+        this.errors = newSlots(recent);
+        this.slowest = newSlots(slowest);
+    }
+
+    private static Slot[] newSlots(int count) {
+        Slot[] slots = new Slot[Math.max(1, count)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+        return slots;
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public String getSide() {
+        return side;
+    }
+
+    /**
+     * @param remoteAddress address of the peer, null when unknown.
+     * @param span          the span of the call, null when it was not sampled.
+     */
+    public void record(long startMillis, long durationMicros, boolean error, InetSocketAddress remoteAddress,
+                       TracingHandler.Span span) {
+        Tracer tracer = span == null ? null : span.getTracer();
+        SpanContext spanContext = span == null ? null : span.context();
+        recent[(int) (recentCount.getAndIncrement() % recent.length)]
+                .write(startMillis, durationMicros, error, remoteAddress, tracer, spanContext);
+        if (error) {
+            errors[(int) (errorCount.getAndIncrement() % errors.length)]
+                    .write(startMillis, durationMicros, error, remoteAddress, tracer, spanContext);
+        }
+        if (durationMicros > slowestMinMicros) {
+            offerSlowest(startMillis, durationMicros, error, remoteAddress, tracer, spanContext);
+        }
+    }
+
+    private void offerSlowest(long startMillis, long durationMicros, boolean error, InetSocketAddress remoteAddress,
+                              Tracer tracer, SpanContext spanContext) {
+        Slot fastest = null;
+        for (Slot slot : slowest) {
+            if (slot.isEmpty()) {
+                fastest = slot;
+                break;
+            }
+            if (fastest == null || slot.durationMicros < fastest.durationMicros) {
+                fastest = slot;
+            }
+        }
+        if (fastest.replaceFaster(startMillis, durationMicros, error, remoteAddress, tracer, spanContext)) {
+            updateSlowestMin();
+        }
+    }
+
+    private void updateSlowestMin() {
+        long min = Long.MAX_VALUE;
+        for (Slot slot : slowest) {
+            if (slot.isEmpty()) {
+                return;
+            }
+            min = Math.min(min, slot.durationMicros);
+        }
+        slowestMinMicros = min;
+    }
+
+    public void addRecent(List<Entry> entries) {
+        addAll(recent, entries);
+    }
+
+    public void addErrors(List<Entry> entries) {
+        addAll(errors, entries);
+    }
+
+    public void addSlowest(List<Entry> entries) {
+        addAll(slowest, entries);
+    }
+
+    private void addAll(Slot[] slots, List<Entry> entries) {
+        for (Slot slot : slots) {
+            Entry entry = slot.read(operationName, side);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * A call, written in place. Its fields are only read between two equal even reads of the sequence.
+     */
+    private static final class Slot {
+        private static final AtomicLongFieldUpdater<Slot> SEQUENCE =
+                AtomicLongFieldUpdater.newUpdater(Slot.class, "sequence");
+
+        private volatile long sequence;
+        private long startMillis;
+        private long durationMicros;
+        private boolean error;
+        private InetSocketAddress remoteAddress;
+        private Tracer tracer;
+        private SpanContext spanContext;
+
+        boolean isEmpty() {
+            return sequence == 0;
+        }
+
+        void write(long startMillis, long durationMicros, boolean error, InetSocketAddress remoteAddress,
+                   Tracer tracer, SpanContext spanContext) {
+            long current = sequence;
+            if ((current & 1) != 0 || !SEQUENCE.compareAndSet(this, current, current + 1)) {
+                return;
+            }
+            set(startMillis, durationMicros, error, remoteAddress, tracer, spanContext);
+            sequence = current + 2;
+        }
+
+        /**
+         * Write the call unless the slot already holds one at least as slow.
+         */
+        boolean replaceFaster(long startMillis, long durationMicros, boolean error, InetSocketAddress remoteAddress,
+                              Tracer tracer, SpanContext spanContext) {
+            long current = sequence;
+            if ((current & 1) != 0 || !SEQUENCE.compareAndSet(this, current, current + 1)) {
+                return false;
+            }
+            boolean replaced = current == 0 || this.durationMicros < durationMicros;
+            if (replaced) {
+                set(startMillis, durationMicros, error, remoteAddress, tracer, spanContext);
+            }
+            sequence = current + 2;
+            return replaced;
+        }
+
+        private void set(long startMillis, long durationMicros, boolean error, InetSocketAddress remoteAddress,
+                         Tracer tracer, SpanContext spanContext) {
+            this.startMillis = startMillis;
+            this.durationMicros = durationMicros;
+            this.error = error;
+            this.remoteAddress = remoteAddress;
+            this.tracer = tracer;
+            this.spanContext = spanContext;
+        }
+
+        Entry read(String operationName, String side) {
+            for (int attempt = 0; attempt < 3; attempt++) {
+                long before = sequence;
+                if (before == 0) {
+                    return null;
+                }
+                if ((before & 1) != 0) {
+                    continue;
+                }
+                Entry entry = new Entry(operationName, side, startMillis, durationMicros, error, remoteAddress,
+                        tracer, spanContext);
+                if (sequence == before) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A call, copied out of its slot when the store is read.
+     */
+    public static final class Entry {
+        private final String operationName;
+        private final String side;
+        private final long startMillis;
+        private final long durationMicros;
+        private final boolean error;
+        private final InetSocketAddress remoteAddress;
+        private final Tracer tracer;
+        private final SpanContext spanContext;
+
+        Entry(String operationName, String side, long startMillis, long durationMicros, boolean error,
+              InetSocketAddress remoteAddress, Tracer tracer, SpanContext spanContext) {
+            this.operationName = operationName;
+            this.side = side;
+            this.startMillis = startMillis;
+            this.durationMicros = durationMicros;
+            this.error = error;
+            this.remoteAddress = remoteAddress;
+            this.tracer = tracer;
+            this.spanContext = spanContext;
+        }
+
+        public String getOperationName() {
+            return operationName;
+        }
+
+        public String getSide() {
+            return side;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getDurationMicros() {
+            return durationMicros;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+
+        /**
+         * host:port of the peer, null when unknown.
+         */
+        public String getRemoteAddress() {
+            if (remoteAddress == null) {
+                return null;
+            }
+            String host = remoteAddress.getAddress() != null
+                    ? remoteAddress.getAddress().getHostAddress() : remoteAddress.getHostName();
+            return host + ":" + remoteAddress.getPort();
+        }
+
+        /**
+         * The ids of the span of the call, see {@link CompactPropagation#encodeIds}, null when it was not sampled.
+         */
+        public String getTraceId() {
+            return spanContext == null ? null : CompactPropagation.encodeIds(tracer, spanContext);
+        }
+    }
+}
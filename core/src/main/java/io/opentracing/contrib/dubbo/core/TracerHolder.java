@@ -0,0 +1,69 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.NoopTracer;
+import io.opentracing.Tracer;
+import io.opentracing.contrib.tracerresolver.TracerResolver;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * The tracer of every filter in the process, resolved once on first use. When no tracer is resolved, the
+ * {@link GlobalTracer} is used and the registration of a tracer with it is noticed later.
+ */
+final class TracerHolder {
+
+    private static final long REGISTRATION_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Plain fields, a thread reading a stale value only notices the registration on a later call.
+     */
+    private static boolean globalRegistered;
+    private static long nextRegistrationCheck;
+
+    private TracerHolder() {
+    }
+
+    static Tracer get() {
+        return Holder.TRACER;
+    }
+
+    /**
+     * Whether a tracer is registered with the {@link GlobalTracer}, checked at most once per second until it is.
+     */
+    static boolean isGlobalRegistered() {
+        if (globalRegistered) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        if (now - nextRegistrationCheck < 0) {
+            return false;
+        }
+        nextRegistrationCheck = now + REGISTRATION_CHECK_INTERVAL;
+        globalRegistered = GlobalTracer.isRegistered();
+        return globalRegistered;
+    }
+
+    private static Tracer resolve() {
+        Tracer tracer = TracerResolver.resolveTracer();
+        if (tracer == null) {
+            tracer = GlobalTracer.get();
+        }
+        if (!(tracer instanceof NoopTracer) && TracingConfig.getBoolean(TracingConfig.ASYNC_REPORTER, false)) {
+            tracer = new AsyncReportingTracer(tracer, new AsyncReporter(
+                    TracingConfig.getInt(TracingConfig.ASYNC_REPORTER_QUEUE_SIZE, AsyncReporter.DEFAULT_QUEUE_SIZE),
+                    TracingConfig.getInt(TracingConfig.ASYNC_REPORTER_BATCH_SIZE, AsyncReporter.DEFAULT_BATCH_SIZE),
+                    AsyncReporter.DropPolicy.parse(
+                            TracingConfig.getString(TracingConfig.ASYNC_REPORTER_DROP_POLICY, null))));
+        }
+        return tracer;
+    }
+
+    /**
+     * Resolved by the class initialization on the first {@link #get()}, which the JVM runs once.
+     */
+    private static final class Holder {
+        static final Tracer TRACER = resolve();
+    }
+}
@@ -0,0 +1,206 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Tracing settings, read from system properties. e.g. -Ddubbo.tracing.cache.size=1024
+ */
+public final class TracingConfig {
+
+    static final String CACHE_SIZE = "dubbo.tracing.cache.size";
+    /**
+     * active_span to activate the spans of calls with the tracer, thread_local for a {@link ThreadLocalScopeManager}.
+     */
+    static final String SCOPE = "dubbo.tracing.scope";
+    /**
+     * const, probabilistic, ratelimiting or the class name of a {@link Sampler}.
+     */
+    static final String SAMPLER_TYPE = "dubbo.tracing.sampler";
+    /**
+     * 1 or 0 for const, the sampling rate for probabilistic, the traces per second and operation for ratelimiting.
+     */
+    static final String SAMPLER_PARAM = "dubbo.tracing.sampler.param";
+    /**
+     * Record failed calls of traces that were not sampled.
+     */
+    static final String SAMPLE_ERRORS = "dubbo.tracing.sampler.errors";
+    /**
+     * Only report local traces slower than dubbo.tracing.tail.latency milliseconds or with an error.
+     */
+    static final String TAIL_SAMPLING = "dubbo.tracing.tail";
+    static final String TAIL_LATENCY = "dubbo.tracing.tail.latency";
+    /**
+     * Maximum number of filter spans buffered per local trace.
+     */
+    static final String TAIL_CAPACITY = "dubbo.tracing.tail.capacity";
+    /**
+     * Finish spans on a background thread instead of the Dubbo thread.
+     */
+    static final String ASYNC_REPORTER = "dubbo.tracing.reporter.async";
+    static final String ASYNC_REPORTER_QUEUE_SIZE = "dubbo.tracing.reporter.queue.size";
+    static final String ASYNC_REPORTER_BATCH_SIZE = "dubbo.tracing.reporter.batch.size";
+    /**
+     * drop or caller_runs, when the queue is full.
+     */
+    static final String ASYNC_REPORTER_DROP_POLICY = "dubbo.tracing.reporter.drop.policy";
+    /**
+     * Limits of the compact propagation attachment, baggage beyond them is not propagated.
+     */
+    static final String PROPAGATION_MAX_LENGTH = "dubbo.tracing.propagation.max.length";
+    static final String PROPAGATION_MAX_BAGGAGE = "dubbo.tracing.propagation.max.baggage";
+    /**
+     * Frames per throwable and chars of a rendered stack.
+     */
+    static final String ERROR_STACK_DEPTH = "dubbo.tracing.error.stack.depth";
+    static final String ERROR_STACK_LENGTH = "dubbo.tracing.error.stack.length";
+    /**
+     * Full stacks logged per second for the same failure, repeats beyond it only reference the first one.
+     */
+    static final String ERROR_STACK_RATE = "dubbo.tracing.error.stack.rate";
+    static final String ERROR_CACHE_SIZE = "dubbo.tracing.error.cache.size";
+    /**
+     * Top frames identifying the same failure.
+     */
+    static final String ERROR_FINGERPRINT_FRAMES = "dubbo.tracing.error.fingerprint.frames";
+    /**
+     * Maximum UTF-8 bytes of the arguments tag.
+     */
+    static final String ARGUMENTS_BUDGET = "dubbo.tracing.args.budget";
+    /**
+     * Also tag the arguments of sampled calls that succeed.
+     */
+    static final String ARGUMENTS_ON_SUCCESS = "dubbo.tracing.args.success";
+    /**
+     * Include, exclude and redact rules, see {@link ArgumentCapture}.
+     */
+    static final String ARGUMENTS_RULES = "dubbo.tracing.args.rules";
+    /**
+     * Measure the time calls wait for a thread of the provider's pool, see {@code TracingDispatcherWrapper}.
+     */
+    public static final String QUEUE_WAIT = "dubbo.tracing.queue_wait";
+    /**
+     * Measure the size and serialization time of calls, see {@code TracingCodecWrapper}.
+     */
+    public static final String PAYLOAD = "dubbo.tracing.payload";
+    /**
+     * Keep the recent, failed and slowest calls of every operation in process, see {@link TraceStore}. Needs the
+     * metrics.
+     */
+    public static final String STORE = "dubbo.tracing.store";
+    /**
+     * Recent and failed calls kept per operation and side.
+     */
+    static final String STORE_RECENT = "dubbo.tracing.store.recent";
+    /**
+     * Slowest calls kept per operation and side.
+     */
+    static final String STORE_SLOWEST = "dubbo.tracing.store.slowest";
+    /**
+     * Propagate the deadline of consumer calls, and reject the calls received or made after it, see
+     * {@link TracingDeadline}.
+     */
+    public static final String DEADLINE = "dubbo.tracing.deadline";
+    /**
+     * Milliseconds a call may be late before it is rejected, for the clock skew between hosts.
+     */
+    public static final String DEADLINE_SKEW = "dubbo.tracing.deadline.skew";
+    /**
+     * One client span per logical call over the retries of the cluster, see {@code TracingClusterWrapper}.
+     */
+    public static final String CLUSTER = "dubbo.tracing.cluster";
+    /**
+     * Calls of an operation under a server span that get their own span before the next ones are folded into a
+     * composite span, 0 to never fold, see {@link FanOutCompressor}.
+     */
+    public static final String FANOUT = "dubbo.tracing.fanout";
+    /**
+     * Folded calls slower than this multiple of the mean still get their own span.
+     */
+    static final String FANOUT_OUTLIER = "dubbo.tracing.fanout.outlier";
+    /**
+     * Include and exclude rules of the traced operations, see {@link TracingRules}.
+     */
+    static final String RULES = "dubbo.tracing.rules";
+    /**
+     * Record calls, errors and latency of every operation, see {@link TracingMetrics}.
+     */
+    public static final String METRICS = "dubbo.tracing.metrics";
+    /**
+     * Tag spans with the time spent by the filter itself, in nanoseconds. Requires the metrics.
+     */
+    public static final String OVERHEAD_TAG = "dubbo.tracing.overhead.tag";
+    /**
+     * Sample fewer new traces while tracing is over budget, see {@link OverheadGovernor}.
+     */
+    static final String GOVERNOR = "dubbo.tracing.governor";
+    /**
+     * Maximum share of the call time spent by the filter, e.g. 0.02.
+     */
+    static final String GOVERNOR_MAX_OVERHEAD = "dubbo.tracing.governor.overhead";
+    /**
+     * Maximum fill of the async reporter queue, from 0 to 1.
+     */
+    static final String GOVERNOR_MAX_QUEUE = "dubbo.tracing.governor.queue";
+    /**
+     * Maximum calls per second, 0 for no limit.
+     */
+    static final String GOVERNOR_MAX_RATE = "dubbo.tracing.governor.rate";
+    static final String GOVERNOR_INTERVAL = "dubbo.tracing.governor.interval";
+    /**
+     * Periods under half of every budget before stepping back up.
+     */
+    static final String GOVERNOR_RECOVERY = "dubbo.tracing.governor.recovery";
+
+    private TracingConfig() {
+    }
+
+    static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    static double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,158 @@
+package io.opentracing.contrib.dubbo.core;
+
+import io.opentracing.SpanContext;
+
+/**
+ * Per-thread tracing state of the call being served. Reused for every call on the thread.
+ */
+public final class TracingContext {
+
+    private static final ThreadLocal<TracingContext> CONTEXT = new ThreadLocal<TracingContext>() {
+        @Override
+        protected TracingContext initialValue() {
+            return new TracingContext();
+        }
+    };
+
+    private boolean notSampled;
+    private TraceBuffer traceBuffer;
+    private long downstreamNanos;
+    private long requestBytes = -1;
+    private long responseBytes = -1;
+    private long serializationNanos = -1;
+    private long deadline;
+    private boolean deadlineExceeded;
+    private boolean clusterCall;
+    private TracingHandler.Span clusterSpan;
+    private SpanContext serverSpan;
+    private TracingHandler.Span tracedSpan;
+
+    private TracingContext() {
+    }
+
+    public static TracingContext get() {
+        return CONTEXT.get();
+    }
+
+    /**
+     * Whether the call being served belongs to a trace that is not sampled, so nested consumer calls must not
+     * start a new one.
+     */
+    public boolean isNotSampled() {
+        return notSampled;
+    }
+
+    public void setNotSampled(boolean notSampled) {
+        this.notSampled = notSampled;
+    }
+
+    /**
+     * The local trace buffered for tail sampling on this thread, if any.
+     */
+    TraceBuffer getTraceBuffer() {
+        return traceBuffer;
+    }
+
+    void setTraceBuffer(TraceBuffer traceBuffer) {
+        this.traceBuffer = traceBuffer;
+    }
+
+    /**
+     * The span of the call being served or made by the filter on this thread, set for the {@link TraceStore} only.
+     */
+    public TracingHandler.Span getTracedSpan() {
+        return tracedSpan;
+    }
+
+    public void setTracedSpan(TracingHandler.Span tracedSpan) {
+        this.tracedSpan = tracedSpan;
+    }
+
+    /**
+     * Time of the rest of the chain in the last call made by the filter on this thread.
+     */
+    public long getDownstreamNanos() {
+        return downstreamNanos;
+    }
+
+    public void setDownstreamNanos(long downstreamNanos) {
+        this.downstreamNanos = downstreamNanos;
+    }
+
+    /**
+     * Sizes and serialization time of the last call made by the filter on this thread, -1 when not measured.
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public long getSerializationNanos() {
+        return serializationNanos;
+    }
+
+    public boolean hasPayload() {
+        return requestBytes >= 0 || responseBytes >= 0 || serializationNanos >= 0;
+    }
+
+    public void setPayload(long requestBytes, long responseBytes, long serializationNanos) {
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.serializationNanos = serializationNanos;
+    }
+
+    /**
+     * Deadline of the call being served, in milliseconds since epoch, 0 when it has none.
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Whether the last call made by the filter on this thread was rejected because of its deadline.
+     */
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+
+    public void setDeadlineExceeded(boolean deadlineExceeded) {
+        this.deadlineExceeded = deadlineExceeded;
+    }
+
+    /**
+     * Whether a logical call of {@code TracingClusterWrapper} is in progress, whose attempts have no span.
+     */
+    public boolean isClusterCall() {
+        return clusterCall;
+    }
+
+    /**
+     * The span of the logical call in progress, null when it is not sampled.
+     */
+    public TracingHandler.Span getClusterSpan() {
+        return clusterSpan;
+    }
+
+    public void setClusterCall(boolean clusterCall, TracingHandler.Span clusterSpan) {
+        this.clusterCall = clusterCall;
+        this.clusterSpan = clusterSpan;
+    }
+
+    /**
+     * The context of the server span open on this thread, null when none is.
+     */
+    SpanContext getServerSpan() {
+        return serverSpan;
+    }
+
+    void setServerSpan(SpanContext serverSpan) {
+        this.serverSpan = serverSpan;
+    }
+}
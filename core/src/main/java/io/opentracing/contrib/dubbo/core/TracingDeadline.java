@@ -0,0 +1,37 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * Deadline of the call being served on the current thread, propagated by consumers when
+ * dubbo.tracing.deadline=true. The deadline of a consumer call is the end of its timeout, or of the call being
+ * served if earlier. Providers reject the calls received, and the nested calls made, after it. e.g.
+ * <pre>
+ * if (TracingDeadline.getRemainingMillis() == 0) {
+ *     return cachedBooks;
+ * }
+ * </pre>
+ * Deadlines are compared across hosts, dubbo.tracing.deadline.skew allows for their clock skew.
+ */
+public final class TracingDeadline {
+
+    private TracingDeadline() {
+    }
+
+    /**
+     * @return the milliseconds left before the deadline, 0 once it passed, or -1 when the call being served has
+     * no deadline.
+     */
+    public static long getRemainingMillis() {
+        long deadline = TracingContext.get().getDeadline();
+        if (deadline <= 0) {
+            return -1;
+        }
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Whether the call being served has a deadline that passed.
+     */
+    public static boolean isExpired() {
+        return getRemainingMillis() == 0;
+    }
+}
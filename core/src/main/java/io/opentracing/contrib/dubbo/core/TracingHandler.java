@@ -0,0 +1,586 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.opentracing.BaseSpan;
+import io.opentracing.NoopTracer;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.GlobalTracer;
+
+public class TracingHandler {
+    private static final Logger log = LoggerFactory.getLogger(TracingHandler.class);
+
+    public static final String COMPONENT = "dubbo";
+    public static final String METHOD_ARGUMENTS = "arguments";
+    static final String DUBBO_URL = "url";
+    public static final String PEER_ADDRESS = "peer.address";
+    /**
+     * Time spent by the filter itself until the span is closed, in nanoseconds.
+     */
+    public static final String FILTER_OVERHEAD = "tracing.overhead_ns";
+    /**
+     * Number of attempts of a logical call, and the fields of the event logged for each of them.
+     */
+    public static final String ATTEMPTS = "dubbo.attempts";
+    static final String ATTEMPT_EVENT = "attempt";
+    static final String ATTEMPT = "attempt";
+    public static final String OUTCOME = "outcome";
+    /**
+     * Attachment carrying the sampling decision of the caller, "0" when the trace is not sampled.
+     */
+    public static final String SAMPLED_ATTACHMENT = "ot-sampled";
+    public static final String NOT_SAMPLED = "0";
+    /**
+     * Attachment carrying the deadline of a call, in milliseconds since epoch.
+     */
+    public static final String DEADLINE_ATTACHMENT = "ot-deadline";
+    /**
+     * Time a provider call waited in the queue of the thread pool, in microseconds.
+     */
+    public static final String QUEUE_WAIT = "dubbo.queue_wait";
+    /**
+     * Sizes of a call in bytes, and the time spent encoding and decoding them on this side, in nanoseconds.
+     */
+    public static final String REQUEST_BYTES = "dubbo.request_bytes";
+    public static final String RESPONSE_BYTES = "dubbo.response_bytes";
+    public static final String SERIALIZATION = "dubbo.serialization_ns";
+    /**
+     * Set on the span of a call rejected because its deadline had passed.
+     */
+    public static final String DEADLINE_EXCEEDED = "dubbo.deadline_exceeded";
+
+    private final Tracer tracer;
+    private final Sampler sampler;
+    private final boolean sampleErrors;
+    private final TailSampler tailSampler;
+    private final OverheadGovernor governor;
+    private final FanOutCompressor fanOut;
+    private final ScopeManager scopeManager;
+    private final ExceptionRenderer exceptionRenderer = new ExceptionRenderer(
+            TracingConfig.getInt(TracingConfig.ERROR_STACK_DEPTH, ExceptionRenderer.DEFAULT_MAX_DEPTH),
+            TracingConfig.getInt(TracingConfig.ERROR_STACK_LENGTH, ExceptionRenderer.DEFAULT_MAX_LENGTH),
+            TracingConfig.getInt(TracingConfig.ERROR_STACK_RATE, ExceptionRenderer.DEFAULT_RATE),
+            TracingConfig.getInt(TracingConfig.ERROR_CACHE_SIZE, ExceptionRenderer.DEFAULT_CACHE_SIZE),
+            TracingConfig.getInt(TracingConfig.ERROR_FINGERPRINT_FRAMES, ExceptionRenderer.DEFAULT_FINGERPRINT_FRAMES));
+    private final ArgumentCapture argumentCapture = resolveArgumentCapture();
+    private final TracingRules rules = resolveRules();
+    private final CompactPropagation compactPropagation = new CompactPropagation(
+            TracingConfig.getInt(TracingConfig.PROPAGATION_MAX_LENGTH, CompactPropagation.DEFAULT_MAX_LENGTH),
+            TracingConfig.getInt(TracingConfig.PROPAGATION_MAX_BAGGAGE, CompactPropagation.DEFAULT_MAX_BAGGAGE));
+    private final boolean noop;
+    private final boolean global;
+
+    public TracingHandler() {
+        this(TracerHolder.get());
+    }
+
+    public TracingHandler(Tracer tracer) {
+        this(tracer, resolveGovernor(),
+                TracingConfig.getBoolean(TracingConfig.SAMPLE_ERRORS, true), resolveTailSampler());
+    }
+
+    public TracingHandler(Tracer tracer, Sampler sampler, boolean sampleErrors) {
+        this(tracer, sampler, sampleErrors, null);
+    }
+
+    TracingHandler(Tracer tracer, Sampler sampler, boolean sampleErrors, TailSampler tailSampler) {
+        this.tracer = tracer;
+        this.sampler = sampler;
+        this.sampleErrors = sampleErrors;
+        this.tailSampler = tailSampler;
+        this.governor = sampler instanceof OverheadGovernor ? (OverheadGovernor) sampler : null;
+        this.fanOut = resolveFanOut(tracer);
+        this.scopeManager = ThreadLocalScopeManager.TYPE.equals(TracingConfig.getString(TracingConfig.SCOPE, null))
+                ? new ThreadLocalScopeManager(tracer) : new ActiveSpanScopeManager(tracer);
+        Tracer reportingTracer = tracer instanceof AsyncReportingTracer
+                ? ((AsyncReportingTracer) tracer).getDelegate() : tracer;
+        this.noop = reportingTracer instanceof NoopTracer;
+        this.global = reportingTracer instanceof GlobalTracer;
+    }
+
+    /**
+     * Whether spans would be recorded at all. False for the {@link NoopTracer} and for the {@link GlobalTracer}
+     * until a tracer is registered, which is re-checked at most once per second. The {@link OverheadGovernor} only
+     * throttles new traces, so it never turns tracing off.
+     */
+    public boolean isActive() {
+        if (noop) {
+            return false;
+        }
+        return !global || TracerHolder.isGlobalRegistered();
+    }
+
+    /**
+     * Whether the caller propagated a decision not to sample this trace.
+     */
+    public boolean isNotSampled(Map<String, String> contextCarrier) {
+        return contextCarrier != null && (NOT_SAMPLED.equals(contextCarrier.get(CompactPropagation.ATTACHMENT))
+                || NOT_SAMPLED.equals(contextCarrier.get(SAMPLED_ATTACHMENT)));
+    }
+
+    /**
+     * Propagate a decision not to sample the trace to the provider, in the {@link CompactPropagation} attachment
+     * when it reads it, in the {@link #SAMPLED_ATTACHMENT} attachment otherwise.
+     */
+    public void injectNotSampled(Map<String, String> contextCarrier, OperationMetadata operation) {
+        if (operation.isCompactPropagation()) {
+            contextCarrier.remove(SAMPLED_ATTACHMENT);
+            contextCarrier.put(CompactPropagation.ATTACHMENT, NOT_SAMPLED);
+        } else {
+            contextCarrier.remove(CompactPropagation.ATTACHMENT);
+            contextCarrier.put(SAMPLED_ATTACHMENT, NOT_SAMPLED);
+        }
+    }
+
+    /**
+     * Whether the calls of an operation are traced, from its tracing url parameter and the tracing rules.
+     */
+    public boolean isTraced(OperationMetadata operation, boolean isConsumer) {
+        return operation.isTracing() && rules.isTraced(operation, isConsumer);
+    }
+
+    /**
+     * Start the span of a call, or return null when its trace is not sampled. A consumer then propagates the
+     * decision to the provider, see {@link #injectNotSampled}.
+     */
+    public Span newSpan(boolean isConsumer,
+                 Map<String, String> contextCarrier,
+                 OperationMetadata operation) {
+        if (isConsumer) {
+            if (TracingContext.get().isNotSampled()
+                    || (scopeManager.activeSpan() == null && !isSampled(operation))) {
+                injectNotSampled(contextCarrier, operation);
+                return null;
+            }
+            contextCarrier.remove(SAMPLED_ATTACHMENT);
+            return new Span(true, contextCarrier, null, operation);
+        }
+
+        SpanContext parent = compactPropagation.extract(tracer, contextCarrier);
+        if (parent == null && !isSampled(operation)) {
+            return null;
+        }
+        return new Span(false, contextCarrier, parent, operation);
+    }
+
+    /**
+     * Whether a new trace is sampled, at the rate of the tracing.sample url parameter when set. The governor
+     * still throttles it.
+     */
+    private boolean isSampled(OperationMetadata operation) {
+        double rate = operation.getSampleRate();
+        if (rate < 0) {
+            return sampler.isSampled(operation.getOperationName());
+        }
+        return (rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate))
+                && (governor == null || governor.admit());
+    }
+
+    /**
+     * The fold of a sampled consumer call repeating an operation under the server span it is made from, or null
+     * when it gets its own span. Calls under a span activated by the application are not folded, since its folds
+     * would only be reported when the thread next makes calls.
+     */
+    public FanOutCompressor.Fold fold(OperationMetadata operation) {
+        if (fanOut == null) {
+            return null;
+        }
+        TracingContext context = TracingContext.get();
+        SpanContext serverSpan = context.getServerSpan();
+        if (serverSpan == null || context.isNotSampled()) {
+            return null;
+        }
+        BaseSpan<?> parent = scopeManager.activeSpan();
+        return parent != null && parent.context() == serverSpan ? fanOut.fold(serverSpan, operation) : null;
+    }
+
+    /**
+     * Count a folded call, and report it as a span of its own when it failed or was much slower than the others.
+     *
+     * @param startMicros start of the call, in microseconds since epoch.
+     */
+    public void folded(FanOutCompressor.Fold fold,
+                String remoteAddress,
+                OperationMetadata operation,
+                long startMicros,
+                long durationNanos,
+                Throwable e,
+                Object[] arguments) {
+        if (fanOut.record(fold, remoteAddress, startMicros, durationNanos, e != null)) {
+            io.opentracing.Span span = tracer.buildSpan(operation.getOperationName())
+                    .asChildOf(scopeManager.activeSpan())
+                    .withStartTimestamp(startMicros)
+                    .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+                    .withTag(FanOutCompressor.OUTLIER, true)
+                    .startManual();
+            finishReported(span, remoteAddress, operation, e, arguments);
+        }
+    }
+
+    /**
+     * @return the governor of the process, null when it is disabled.
+     */
+    OverheadGovernor getGovernor() {
+        return governor;
+    }
+
+    public boolean isSampleErrors() {
+        return sampleErrors;
+    }
+
+    /**
+     * Record a failed call of a trace that was not sampled, as a finished span without parent.
+     *
+     * @param startMicros start of the call, in microseconds since epoch.
+     */
+    public void reportError(boolean isConsumer,
+                     String remoteAddress,
+                     OperationMetadata operation,
+                     long startMicros,
+                     Throwable e,
+                     Object[] arguments) {
+        io.opentracing.Span span = tracer.buildSpan(operation.getOperationName())
+                .ignoreActiveSpan()
+                .withStartTimestamp(startMicros)
+                .withTag(Tags.SPAN_KIND.getKey(), isConsumer ? Tags.SPAN_KIND_CLIENT : Tags.SPAN_KIND_SERVER)
+                .startManual();
+        finishReported(span, remoteAddress, operation, e, arguments);
+    }
+
+    private void finishReported(io.opentracing.Span span,
+                                String remoteAddress,
+                                OperationMetadata operation,
+                                Throwable e,
+                                Object[] arguments) {
+        Tags.COMPONENT.set(span, operation.getComponent());
+        span.setTag(PEER_ADDRESS, remoteAddress);
+        span.setTag(DUBBO_URL, operation.getRequestURL());
+        if (e != null) {
+            Tags.ERROR.set(span, Boolean.TRUE);
+            span.log(logsForException(e));
+            tagArguments(span, operation, arguments);
+        }
+        span.finish(MicrosClock.nowMicros());
+    }
+
+    public class Span implements TraceBuffer.Materializer {
+
+        private final boolean isConsumer;
+        private final OperationMetadata operation;
+        private final io.opentracing.Span span;
+        private final Scope scope;
+        private boolean detached;
+        private SpanContext previousServerSpan;
+        private TraceBuffer.BufferedSpan bufferedSpan;
+        private String remoteAddress;
+        private long overheadNanos = -1;
+        private long queueWaitMicros = -1;
+        private long requestBytes = -1;
+        private long responseBytes = -1;
+        private long serializationNanos = -1;
+        private Throwable error;
+        private Object[] arguments;
+        private int attempts;
+
+        Span(boolean isConsumer,
+             Map<String, String> contextCarrier,
+             SpanContext parent,
+             OperationMetadata operation) {
+            this.isConsumer = isConsumer;
+            this.operation = operation;
+            String operationName = operation.getOperationName();
+            if (log.isDebugEnabled()) {
+                log.debug("Tracing {} {}", isConsumer ? "Consumer" : "Provider", operationName);
+            }
+
+            Tracer.SpanBuilder spanBuilder = tracer.buildSpan(operationName)
+                    .withTag(Tags.SPAN_KIND.getKey(), isConsumer ? Tags.SPAN_KIND_CLIENT : Tags.SPAN_KIND_SERVER);
+            BaseSpan<?> activeSpan = parent == null ? scopeManager.activeSpan() : null;
+            if (parent != null) {
+                spanBuilder.asChildOf(parent);
+            } else if (activeSpan != null) {
+                spanBuilder.asChildOf(activeSpan);
+            }
+            if (tailSampler != null) {
+                bufferedSpan = tailSampler.start(spanBuilder, this);
+                span = bufferedSpan;
+            } else {
+                span = spanBuilder.startManual();
+                Tags.COMPONENT.set(span, operation.getComponent());
+                span.setTag(DUBBO_URL, operation.getRequestURL());
+            }
+            scope = scopeManager.activate(span);
+            if (!isConsumer && fanOut != null) {
+                TracingContext context = TracingContext.get();
+                previousServerSpan = context.getServerSpan();
+                context.setServerSpan(span.context());
+            }
+
+            if (isConsumer) {
+                inject(contextCarrier);
+            }
+        }
+
+        Tracer getTracer() {
+            return tracer;
+        }
+
+        /**
+         * Null for a span buffered for tail sampling and not started, see {@link TraceBuffer}.
+         */
+        SpanContext context() {
+            return bufferedSpan != null && !bufferedSpan.isStarted() ? null : span.context();
+        }
+
+        /**
+         * Propagate the span to a provider.
+         */
+        public void inject(Map<String, String> contextCarrier) {
+            if (operation.isCompactPropagation()) {
+                compactPropagation.inject(tracer, span.context(), contextCarrier);
+            } else {
+                CompactPropagation.injectTextMap(tracer, span.context(), contextCarrier);
+            }
+        }
+
+        /**
+         * Log an attempt of a logical call, and count it.
+         *
+         * @param error the failure of the attempt, null when it succeeded.
+         */
+        public void attempt(String remoteAddress, Throwable error) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("event", ATTEMPT_EVENT);
+            fields.put(ATTEMPT, ++attempts);
+            fields.put(PEER_ADDRESS, remoteAddress);
+            fields.put(OUTCOME, error == null ? "success" : "error");
+            if (error != null) {
+                fields.put("error.kind", error.getClass().getName());
+            }
+            span.log(fields);
+            span.setTag(ATTEMPTS, attempts);
+        }
+
+        public void setRemoteAddress(String remoteAddress) {
+            if (bufferedSpan != null) {
+                this.remoteAddress = remoteAddress;
+            } else {
+                span.setTag(PEER_ADDRESS, remoteAddress);
+            }
+        }
+
+        public void setDeadlineExceeded() {
+            span.setTag(DEADLINE_EXCEEDED, true);
+        }
+
+        public void setQueueWait(long queueWaitMicros) {
+            if (bufferedSpan != null) {
+                this.queueWaitMicros = queueWaitMicros;
+            } else {
+                span.setTag(QUEUE_WAIT, queueWaitMicros);
+            }
+        }
+
+        /**
+         * Each value is -1 when it was not measured.
+         */
+        public void setPayload(long requestBytes, long responseBytes, long serializationNanos) {
+            if (bufferedSpan != null) {
+                this.requestBytes = requestBytes;
+                this.responseBytes = responseBytes;
+                this.serializationNanos = serializationNanos;
+            } else {
+                tagPayload(span, requestBytes, responseBytes, serializationNanos);
+            }
+        }
+
+        public void setOverhead(long overheadNanos) {
+            if (bufferedSpan != null) {
+                this.overheadNanos = overheadNanos;
+            } else {
+                span.setTag(FILTER_OVERHEAD, overheadNanos);
+            }
+        }
+
+        public void error(Throwable e, Object[] arguments) {
+            if (bufferedSpan != null) {
+                error = e;
+                this.arguments = arguments;
+                bufferedSpan.markError();
+                return;
+            }
+
+            Tags.ERROR.set(span, Boolean.TRUE);
+            span.log(logsForException(e));
+            tagArguments(span, operation, arguments);
+        }
+
+        /**
+         * Tag the arguments of a call that succeeded, when enabled.
+         */
+        public void success(Object[] arguments) {
+            Boolean captureArguments = operation.getCaptureArguments();
+            if (captureArguments != null ? !captureArguments : !argumentCapture.isCaptureOnSuccess()) {
+                return;
+            }
+            if (bufferedSpan != null) {
+                this.arguments = arguments;
+            } else {
+                tagArguments(span, operation, arguments);
+            }
+        }
+
+        /**
+         * Tags deferred while the span was buffered for tail sampling.
+         */
+        @Override
+        public void materialize(io.opentracing.Span span) {
+            Tags.COMPONENT.set(span, operation.getComponent());
+            span.setTag(DUBBO_URL, operation.getRequestURL());
+            if (remoteAddress != null) {
+                span.setTag(PEER_ADDRESS, remoteAddress);
+            }
+            if (queueWaitMicros >= 0) {
+                span.setTag(QUEUE_WAIT, queueWaitMicros);
+            }
+            tagPayload(span, requestBytes, responseBytes, serializationNanos);
+            if (overheadNanos >= 0) {
+                span.setTag(FILTER_OVERHEAD, overheadNanos);
+            }
+            if (error != null) {
+                Tags.ERROR.set(span, Boolean.TRUE);
+                span.log(logsForException(error));
+            }
+            if (arguments != null) {
+                tagArguments(span, operation, arguments);
+            }
+        }
+
+        public void close() {
+            if (fanOut != null && !isConsumer) {
+                fanOut.flush(span.context());
+                TracingContext.get().setServerSpan(previousServerSpan);
+            }
+            scope.close();
+            if (!detached) {
+                span.finish();
+            }
+            if (bufferedSpan != null) {
+                tailSampler.deactivated(bufferedSpan);
+            }
+        }
+
+        /**
+         * Deactivate the span on the calling thread but keep it open, for a call that completes asynchronously.
+         * It is finished by {@link #finish()}, from any thread.
+         */
+        public void detach() {
+            detached = true;
+            close();
+        }
+
+        public void finish() {
+            span.finish();
+        }
+    }
+
+    static Sampler resolveSampler() {
+        String type = TracingConfig.getString(TracingConfig.SAMPLER_TYPE, ConstSampler.TYPE);
+        String param = TracingConfig.getString(TracingConfig.SAMPLER_PARAM, null);
+        try {
+            if (ConstSampler.TYPE.equals(type)) {
+                return new ConstSampler(param == null || Double.parseDouble(param) != 0);
+            } else if (ProbabilisticSampler.TYPE.equals(type)) {
+                return new ProbabilisticSampler(param == null ? 1 : Double.parseDouble(param));
+            } else if (RateLimitingSampler.TYPE.equals(type)) {
+                return new RateLimitingSampler(param == null ? 1 : Double.parseDouble(param));
+            }
+            return (Sampler) Class.forName(type, true, Thread.currentThread().getContextClassLoader()).newInstance();
+        } catch (Exception e) {
+            log.error("Failed to create sampler " + type + ", sampling every trace", e);
+            return new ConstSampler(true);
+        }
+    }
+
+    private static Sampler resolveGovernor() {
+        if (TracingConfig.getBoolean(TracingConfig.GOVERNOR, false)) {
+            OverheadGovernor governor = OverheadGovernor.get();
+            if (governor != null) {
+                return governor;
+            }
+        }
+        return resolveSampler();
+    }
+
+    private static TailSampler resolveTailSampler() {
+        if (!TracingConfig.getBoolean(TracingConfig.TAIL_SAMPLING, false)) {
+            return null;
+        }
+        return new TailSampler(TracingConfig.getLong(TracingConfig.TAIL_LATENCY, TailSampler.DEFAULT_LATENCY_MILLIS),
+                TracingConfig.getInt(TracingConfig.TAIL_CAPACITY, TailSampler.DEFAULT_CAPACITY));
+    }
+
+    private static ArgumentCapture resolveArgumentCapture() {
+        int budget = TracingConfig.getInt(TracingConfig.ARGUMENTS_BUDGET, ArgumentCapture.DEFAULT_BUDGET);
+        boolean captureOnSuccess = TracingConfig.getBoolean(TracingConfig.ARGUMENTS_ON_SUCCESS, false);
+        try {
+            return new ArgumentCapture(budget, captureOnSuccess,
+                    TracingConfig.getString(TracingConfig.ARGUMENTS_RULES, null));
+        } catch (RuntimeException e) {
+            log.error("Invalid argument capture rules, capturing every argument", e);
+            return new ArgumentCapture(budget, captureOnSuccess, null);
+        }
+    }
+
+    private static FanOutCompressor resolveFanOut(Tracer tracer) {
+        int threshold = TracingConfig.getInt(TracingConfig.FANOUT, 0);
+        if (threshold <= 0) {
+            return null;
+        }
+        return new FanOutCompressor(tracer, threshold,
+                TracingConfig.getDouble(TracingConfig.FANOUT_OUTLIER, FanOutCompressor.DEFAULT_OUTLIER_FACTOR));
+    }
+
+    private static TracingRules resolveRules() {
+        try {
+            return new TracingRules(TracingConfig.getString(TracingConfig.RULES, TracingRules.DEFAULT_RULES));
+        } catch (RuntimeException e) {
+            log.error("Invalid tracing rules, using " + TracingRules.DEFAULT_RULES, e);
+            return new TracingRules(TracingRules.DEFAULT_RULES);
+        }
+    }
+
+    private Map<String, String> logsForException(Throwable throwable) {
+        return exceptionRenderer.logsForException(throwable);
+    }
+
+    private static void tagPayload(BaseSpan<?> span, long requestBytes, long responseBytes,
+                                   long serializationNanos) {
+        if (requestBytes >= 0) {
+            span.setTag(REQUEST_BYTES, requestBytes);
+        }
+        if (responseBytes >= 0) {
+            span.setTag(RESPONSE_BYTES, responseBytes);
+        }
+        if (serializationNanos >= 0) {
+            span.setTag(SERIALIZATION, serializationNanos);
+        }
+    }
+
+    private void tagArguments(BaseSpan<?> span, OperationMetadata operation, Object[] arguments) {
+        if (Boolean.FALSE.equals(operation.getCaptureArguments())) {
+            return;
+        }
+        String argumentsStr = argumentCapture.format(operation, arguments);
+        if (argumentsStr != null) {
+            span.setTag(METHOD_ARGUMENTS, argumentsStr);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Calls, errors and latency of every operation traced by the filter, whether its spans are sampled or not. Pull
+ * them with {@link #snapshot(boolean)}, resetting them on each pull for per-interval figures, or through JMX.
+ */
+public class TracingMetrics implements TracingMetricsMBean {
+    private static final Logger log = LoggerFactory.getLogger(TracingMetrics.class);
+
+    static final String OBJECT_NAME = "io.opentracing.contrib.dubbo:type=TracingMetrics";
+
+    private static final TracingMetrics INSTANCE = register(new TracingMetrics());
+
+    private final ConcurrentMap<String, OperationMetrics> metrics = new ConcurrentHashMap<>();
+    private final FilterOverhead consumerOverhead = new FilterOverhead(OperationMetrics.CONSUMER);
+    private final FilterOverhead providerOverhead = new FilterOverhead(OperationMetrics.PROVIDER);
+    private final QueueWait queueWait = new QueueWait();
+
+    public static TracingMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The metrics of an operation on a side, cached with its {@link OperationMetadata}.
+     */
+    public OperationMetrics get(OperationMetadata operation, boolean isConsumer) {
+        OperationMetrics operationMetrics = operation.getMetrics(isConsumer);
+        if (operationMetrics == null) {
+            operationMetrics = get(operation.getOperationName(),
+                    isConsumer ? OperationMetrics.CONSUMER : OperationMetrics.PROVIDER);
+            operation.setMetrics(isConsumer, operationMetrics);
+        }
+        return operationMetrics;
+    }
+
+    public OperationMetrics get(String operationName, String side) {
+        String key = side + ' ' + operationName;
+        OperationMetrics operationMetrics = metrics.get(key);
+        if (operationMetrics == null) {
+            operationMetrics = new OperationMetrics(operationName, side);
+            OperationMetrics previous = metrics.putIfAbsent(key, operationMetrics);
+            if (previous != null) {
+                operationMetrics = previous;
+            }
+        }
+        return operationMetrics;
+    }
+
+    public FilterOverhead getOverhead(boolean isConsumer) {
+        return isConsumer ? consumerOverhead : providerOverhead;
+    }
+
+    public List<FilterOverhead.Snapshot> overheadSnapshot(boolean reset) {
+        List<FilterOverhead.Snapshot> snapshots = new ArrayList<>(2);
+        snapshots.add(consumerOverhead.snapshot(reset));
+        snapshots.add(providerOverhead.snapshot(reset));
+        return snapshots;
+    }
+
+    public QueueWait getQueueWait() {
+        return queueWait;
+    }
+
+    public List<OperationMetrics.Snapshot> snapshot(boolean reset) {
+        List<OperationMetrics.Snapshot> snapshots = new ArrayList<>(metrics.size());
+        for (OperationMetrics operationMetrics : metrics.values()) {
+            snapshots.add(operationMetrics.snapshot(reset));
+        }
+        return snapshots;
+    }
+
+    public List<PayloadMetrics.Snapshot> payloadSnapshot(boolean reset) {
+        List<PayloadMetrics.Snapshot> snapshots = new ArrayList<>();
+        for (OperationMetrics operationMetrics : metrics.values()) {
+            PayloadMetrics.Snapshot snapshot = operationMetrics.payloadSnapshot(reset);
+            if (snapshot != null) {
+                snapshots.add(snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    public List<TraceStore> traceStores() {
+        List<TraceStore> stores = new ArrayList<>();
+        for (OperationMetrics operationMetrics : metrics.values()) {
+            TraceStore store = operationMetrics.traces();
+            if (store != null) {
+                stores.add(store);
+            }
+        }
+        return stores;
+    }
+
+    @Override
+    public int getOperationCount() {
+        return metrics.size();
+    }
+
+    @Override
+    public String[] getSnapshot() {
+        return toStrings(snapshot(false));
+    }
+
+    @Override
+    public String[] snapshotAndReset() {
+        return toStrings(snapshot(true));
+    }
+
+    @Override
+    public String[] getOverhead() {
+        return toStrings(overheadSnapshot(false));
+    }
+
+    @Override
+    public String[] overheadSnapshotAndReset() {
+        return toStrings(overheadSnapshot(true));
+    }
+
+    @Override
+    public String[] getPayload() {
+        return toStrings(payloadSnapshot(false));
+    }
+
+    @Override
+    public String[] payloadSnapshotAndReset() {
+        return toStrings(payloadSnapshot(true));
+    }
+
+    @Override
+    public String getQueueWaitSnapshot() {
+        return queueWait.snapshot(false).toString();
+    }
+
+    @Override
+    public String queueWaitSnapshotAndReset() {
+        return queueWait.snapshot(true).toString();
+    }
+
+    private static String[] toStrings(List<?> snapshots) {
+        String[] lines = new String[snapshots.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = snapshots.get(i).toString();
+        }
+        return lines;
+    }
+
+    private static TracingMetrics register(TracingMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(metrics, TracingMetricsMBean.class), new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            log.warn("Failed to register the tracing metrics MBean", e);
+        }
+        return metrics;
+    }
+}
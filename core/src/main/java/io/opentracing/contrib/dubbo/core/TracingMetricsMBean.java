@@ -0,0 +1,40 @@
+package io.opentracing.contrib.dubbo.core;
+
+/**
+ * JMX view of {@link TracingMetrics}, registered as io.opentracing.contrib.dubbo:type=TracingMetrics.
+ */
+public interface TracingMetricsMBean {
+
+    int getOperationCount();
+
+    /**
+     * One line per operation and side, since the start or the last reset.
+     */
+    String[] getSnapshot();
+
+    /**
+     * Same as {@link #getSnapshot()}, then start over.
+     */
+    String[] snapshotAndReset();
+
+    /**
+     * Time spent by the filter itself on the consumer and provider sides, since the start or the last reset.
+     */
+    String[] getOverhead();
+
+    String[] overheadSnapshotAndReset();
+
+    /**
+     * Request and response sizes and serialization time per operation and side, since the start or the last reset.
+     */
+    String[] getPayload();
+
+    String[] payloadSnapshotAndReset();
+
+    /**
+     * Time provider calls waited for a thread of the pool, since the start or the last reset.
+     */
+    String getQueueWaitSnapshot();
+
+    String queueWaitSnapshotAndReset();
+}
@@ -0,0 +1,127 @@
+package io.opentracing.contrib.dubbo.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Which operations are traced, e.g. to skip health checks and polling methods.
+ * <p>
+ * Rules are separated by ';' and matched in order against "service.method", the first match applies and
+ * operations matching none are traced. A pattern may start with "consumer:" or "provider:" to apply to one side
+ * only, and '*' matches any characters. e.g.
+ * <pre>
+ * *.$echo=exclude;consumer:com.xxx.JobService.poll*=exclude;com.xxx.*=include;*=exclude
+ * </pre>
+ * The rules are compiled once, and the decision of each operation and side is cached with its
+ * {@link OperationMetadata}, so a lookup costs a field read.
+ */
+class TracingRules {
+
+    static final String DEFAULT_RULES = "*.$echo=exclude";
+
+    private static final String CONSUMER = "consumer:";
+    private static final String PROVIDER = "provider:";
+
+    private final List<Rule> rules;
+
+    TracingRules(String rules) {
+        this.rules = parseRules(rules);
+    }
+
+    /**
+     * Whether the calls of an operation on a side are traced, cached with the operation.
+     */
+    boolean isTraced(OperationMetadata operation, boolean isConsumer) {
+        Boolean traced = operation.getTraced(isConsumer);
+        if (traced == null) {
+            traced = isTraced(operation.getOperationName(), isConsumer);
+            operation.setTraced(isConsumer, traced);
+        }
+        return traced;
+    }
+
+    /**
+     * @param operationName e.g. org.xxx.Test.test(String)
+     */
+    boolean isTraced(String operationName, boolean isConsumer) {
+        int parameters = operationName.indexOf('(');
+        String name = parameters < 0 ? operationName : operationName.substring(0, parameters);
+        for (Rule rule : rules) {
+            if (rule.matches(name, isConsumer)) {
+                return rule.include;
+            }
+        }
+        return true;
+    }
+
+    private static List<Rule> parseRules(String rules) {
+        List<Rule> parsed = new ArrayList<>();
+        if (rules == null) {
+            return parsed;
+        }
+        for (String rule : rules.split(";")) {
+            int separator = rule.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String pattern = rule.substring(0, separator).trim();
+            String action = rule.substring(separator + 1).trim();
+            boolean include;
+            if ("include".equals(action)) {
+                include = true;
+            } else if ("exclude".equals(action)) {
+                include = false;
+            } else {
+                throw new IllegalArgumentException("Unknown tracing rule action " + action);
+            }
+
+            Boolean consumer = null;
+            if (pattern.startsWith(CONSUMER)) {
+                consumer = Boolean.TRUE;
+                pattern = pattern.substring(CONSUMER.length());
+            } else if (pattern.startsWith(PROVIDER)) {
+                consumer = Boolean.FALSE;
+                pattern = pattern.substring(PROVIDER.length());
+            }
+            parsed.add(new Rule(compileGlob(pattern), consumer, include));
+        }
+        return parsed;
+    }
+
+    /**
+     * A pattern where '*' matches any characters and everything else is literal, shared with the
+     * {@link ArgumentCapture} rules.
+     */
+    static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int star = glob.indexOf('*'); star >= 0; star = glob.indexOf('*', start)) {
+            if (star > start) {
+                regex.append(Pattern.quote(glob.substring(start, star)));
+            }
+            regex.append(".*");
+            start = star + 1;
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class Rule {
+        private final Pattern pattern;
+        private final Boolean consumer;
+        private final boolean include;
+
+        Rule(Pattern pattern, Boolean consumer, boolean include) {
+            this.pattern = pattern;
+            this.consumer = consumer;
+            this.include = include;
+        }
+
+        boolean matches(String name, boolean isConsumer) {
+            return (consumer == null || consumer == isConsumer) && pattern.matcher(name).matches();
+        }
+    }
+}
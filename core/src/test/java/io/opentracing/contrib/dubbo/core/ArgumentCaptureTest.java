@@ -0,0 +1,100 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ArgumentCaptureTest {
+
+    private static final String OPERATION = "org.xxx.UserService.login(String,String)";
+
+    @Test
+    public void testThatSimpleArgumentsAreFormatted() {
+        ArgumentCapture capture = new ArgumentCapture(512, false, null);
+        String arguments = capture.format(new Object[]{"tom", null, 42, true, Thread.State.NEW},
+                capture.getPolicy(OPERATION));
+        assertThat(arguments, equalTo("[tom,null,42,true,NEW]"));
+    }
+
+    @Test
+    public void testThatOtherArgumentsAreNeverConverted() {
+        ArgumentCapture capture = new ArgumentCapture(512, false, null);
+        Object dto = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("must not be converted");
+            }
+        };
+        String arguments = capture.format(new Object[]{dto}, capture.getPolicy(OPERATION));
+        assertThat(arguments, equalTo("[<" + dto.getClass().getName() + ">]"));
+    }
+
+    @Test
+    public void testThatArgumentsAreBounded() {
+        ArgumentCapture capture = new ArgumentCapture(16, false, null);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append('x');
+        }
+        String arguments = capture.format(new Object[]{text.toString(), "next"}, capture.getPolicy(OPERATION));
+        assertThat(arguments, equalTo("[xxxxxxxxxxxx..."));
+
+        assertThat(capture.format(new Object[]{"xxxxxxxxxxxxxx"}, capture.getPolicy(OPERATION)),
+                equalTo("[xxxxxxxxxxxxxx]"));
+        assertThat(capture.format(new Object[]{"xxxxxxxxxxxxxxx"}, capture.getPolicy(OPERATION)),
+                equalTo("[xxxxxxxxxxxx..."));
+    }
+
+    @Test
+    public void testThatBudgetCountsEncodedBytes() {
+        ArgumentCapture capture = new ArgumentCapture(16, false, null);
+        String arguments = capture.format(new Object[]{"\u65e5\u672c\u8a9e\u30c6\u30ad\u30b9\u30c8"},
+                capture.getPolicy(OPERATION));
+        assertThat(arguments, equalTo("[\u65e5\u672c\u8a9e\u30c6..."));
+        assertThat(arguments.getBytes(StandardCharsets.UTF_8).length, equalTo(16));
+
+        arguments = capture.format(new Object[]{"xxxxxxxxxx\ud83d\ude00"}, capture.getPolicy(OPERATION));
+        assertThat(arguments, equalTo("[xxxxxxxxxx\ud83d\ude00]"));
+        arguments = capture.format(new Object[]{"xxxxxxxxxxx\ud83d\ude00"}, capture.getPolicy(OPERATION));
+        assertThat(arguments, equalTo("[xxxxxxxxxxx..."));
+    }
+
+    @Test
+    public void testThatRulesApplyInOrder() {
+        ArgumentCapture capture = new ArgumentCapture(512, false,
+                "org.xxx.UserService.login=redact:1; org.xxx.UserService=exclude; org.xxx.Order*=redact");
+        Object[] arguments = {"tom", "secret"};
+
+        assertThat(capture.format(arguments, capture.getPolicy(OPERATION)), equalTo("[tom,***]"));
+        assertNull(capture.format(arguments, capture.getPolicy("org.xxx.UserService.logout(String)")));
+        assertThat(capture.format(arguments, capture.getPolicy("org.xxx.OrderService.get(String,String)")),
+                equalTo("[***,***]"));
+        assertThat(capture.format(arguments, capture.getPolicy("org.xxx.UserServiceImpl.logout(String)")),
+                equalTo("[tom,secret]"));
+    }
+
+    @Test
+    public void testThatRulesAreGlobs() {
+        ArgumentCapture capture = new ArgumentCapture(512, false, "org.*.*Service.log*=exclude; *.$echo=exclude");
+        Object[] arguments = {"tom", "secret"};
+
+        assertNull(capture.format(arguments, capture.getPolicy(OPERATION)));
+        assertNull(capture.format(arguments, capture.getPolicy("org.xxx.BookService.$echo(Object)")));
+        assertThat(capture.format(arguments, capture.getPolicy("org.xxx.UserService.get(String,String)")),
+                equalTo("[tom,secret]"));
+    }
+
+    @Test
+    public void testThatPolicyIsCachedWithOperation() {
+        ArgumentCapture capture = new ArgumentCapture(512, false, "org.xxx.UserService=exclude");
+        OperationMetadata operation = new OperationMetadata(OPERATION, "dubbo://127.0.0.1:20880/" + OPERATION,
+                TracingHandler.COMPONENT, false);
+        assertNull(capture.format(operation, new Object[]{"tom"}));
+        assertTrue(operation.getArgumentPolicy() == capture.getPolicy(OPERATION));
+    }
+}
@@ -1,4 +1,4 @@
-package io.opentracing.contrib.dubbo.filter;
+package io.opentracing.contrib.dubbo.core;
 
 import io.opentracing.mock.MockSpan;
 import io.opentracing.tag.Tags;
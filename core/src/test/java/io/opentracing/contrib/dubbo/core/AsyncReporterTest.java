@@ -0,0 +1,131 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertChildOfParent;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncReporterTest {
+
+    @Test
+    public void testThatSpansAreFinishedInBackground() throws InterruptedException {
+        MockTracer mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        AsyncReporter reporter = new AsyncReporter(16, 4, AsyncReporter.DropPolicy.CALLER_RUNS);
+        AsyncReportingTracer tracer = new AsyncReportingTracer(mockTracer, reporter);
+
+        for (int i = 0; i < 100; i++) {
+            try (ActiveSpan parent = tracer.buildSpan("parent").startActive()) {
+                tracer.buildSpan("child").startManual().finish();
+            }
+        }
+        reporter.close();
+
+        List<MockSpan> allSpans = mockTracer.finishedSpans();
+        assertThat(allSpans.size(), equalTo(200));
+        assertThat(reporter.getEnqueued() + reporter.getDropped(), equalTo(200L));
+        assertThat(reporter.getExported(), equalTo(reporter.getEnqueued()));
+        assertThat(reporter.getQueueDepth(), equalTo(0));
+    }
+
+    @Test
+    public void testThatParentIsPreserved() {
+        MockTracer mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        AsyncReporter reporter = new AsyncReporter(16, 4, AsyncReporter.DropPolicy.DROP);
+        AsyncReportingTracer tracer = new AsyncReportingTracer(mockTracer, reporter);
+
+        try (ActiveSpan parent = tracer.buildSpan("parent").startActive()) {
+            tracer.buildSpan("child").startManual().finish();
+        }
+        reporter.close();
+
+        List<MockSpan> allSpans = mockTracer.finishedSpans();
+        assertThat(allSpans.size(), equalTo(2));
+        assertChildOfParent(allSpans.get(0), allSpans.get(1));
+    }
+
+    @Test
+    public void testThatSpansReportedAfterCloseAreFinished() {
+        MockTracer mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        AsyncReporter reporter = new AsyncReporter(16, 4, AsyncReporter.DropPolicy.DROP);
+        AsyncReportingTracer tracer = new AsyncReportingTracer(mockTracer, reporter);
+
+        Span span = tracer.buildSpan("shutdown").startManual();
+        reporter.close();
+        span.finish();
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+        assertThat(reporter.getExported(), equalTo(1L));
+        assertThat(reporter.getDropped(), equalTo(0L));
+    }
+
+    @Test
+    public void testThatSpansReportedDuringCloseAreFinished() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            final MockTracer mockTracer =
+                    new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+            final AsyncReporter reporter = new AsyncReporter(1 << 16, 16, AsyncReporter.DropPolicy.CALLER_RUNS);
+            final AtomicBoolean stop = new AtomicBoolean();
+            final AtomicLong reported = new AtomicLong();
+            final CountDownLatch started = new CountDownLatch(4);
+            Thread[] producers = new Thread[4];
+            for (int i = 0; i < producers.length; i++) {
+                producers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        while (!stop.get()) {
+                            reporter.report(mockTracer.buildSpan("closing").startManual(), System.nanoTime() / 1000);
+                            reported.incrementAndGet();
+                        }
+                    }
+                });
+                producers[i].start();
+            }
+            started.await();
+            reporter.close();
+            stop.set(true);
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            assertThat((long) mockTracer.finishedSpans().size(), equalTo(reported.get()));
+            assertThat(reporter.getQueueDepth(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void testThatShortSpansKeepSubMillisecondDurations() {
+        MockTracer mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        AsyncReporter reporter = new AsyncReporter(1024, 4, AsyncReporter.DropPolicy.CALLER_RUNS);
+        AsyncReportingTracer tracer = new AsyncReportingTracer(mockTracer, reporter);
+
+        for (int i = 0; i < 100; i++) {
+            tracer.buildSpan("short").startManual().finish();
+        }
+        reporter.close();
+
+        for (MockSpan span : mockTracer.finishedSpans()) {
+            long durationMicros = span.finishMicros() - span.startMicros();
+            assertTrue(durationMicros >= 0 && durationMicros < 1000);
+        }
+    }
+
+    @Test
+    public void testThatDropPolicyIsParsed() {
+        assertThat(AsyncReporter.DropPolicy.parse("caller_runs"), equalTo(AsyncReporter.DropPolicy.CALLER_RUNS));
+        assertThat(AsyncReporter.DropPolicy.parse("unknown"), equalTo(AsyncReporter.DropPolicy.DROP));
+    }
+}
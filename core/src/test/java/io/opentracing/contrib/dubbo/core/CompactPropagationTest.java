@@ -0,0 +1,137 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.SpanContext;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapInjectAdapter;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CompactPropagationTest {
+
+    private final MockTracer mockTracer =
+            new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+
+    @Test
+    public void testThatContextIsPackedInOneAttachment() {
+        CompactPropagation propagation = new CompactPropagation(1024, 8);
+        Map<String, String> attachments = new HashMap<>();
+        try (ActiveSpan span = mockTracer.buildSpan("client").startActive()) {
+            span.setBaggageItem("user", "jack,=%");
+            propagation.inject(mockTracer, span.context(), attachments);
+
+            assertThat(attachments.size(), equalTo(1));
+            MockSpan.MockContext context = (MockSpan.MockContext) propagation.extract(mockTracer, attachments);
+            MockSpan.MockContext expected = (MockSpan.MockContext) span.context();
+            assertThat(context.traceId(), equalTo(expected.traceId()));
+            assertThat(context.spanId(), equalTo(expected.spanId()));
+            assertThat(context.getBaggageItem("user"), equalTo("jack,=%"));
+        }
+    }
+
+    @Test
+    public void testThatTextMapFieldsAreReplaced() {
+        CompactPropagation propagation = new CompactPropagation(1024, 8);
+        Map<String, String> attachments = new HashMap<>();
+        try (ActiveSpan span = mockTracer.buildSpan("client").startActive()) {
+            mockTracer.inject(span.context(), Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(attachments));
+            propagation.inject(mockTracer, span.context(), attachments);
+
+            assertThat(attachments.keySet(), equalTo(Collections.singleton(CompactPropagation.ATTACHMENT)));
+        }
+    }
+
+    @Test
+    public void testThatNotSampledIsSentInTheSameAttachment() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(CompactPropagation.PARAMETER, CompactPropagation.COMPACT);
+        OperationMetadata operation = new OperationCache(16)
+                .get("dubbo", "127.0.0.1", 20880, "org.xxx.Test", "test", new Class<?>[0], parameters);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(false), false);
+        Map<String, String> attachments = new HashMap<>();
+        attachments.put(TracingHandler.SAMPLED_ATTACHMENT, TracingHandler.NOT_SAMPLED);
+
+        assertThat(handler.newSpan(true, attachments, operation), nullValue());
+        assertThat(attachments, equalTo(Collections.singletonMap(CompactPropagation.ATTACHMENT,
+                TracingHandler.NOT_SAMPLED)));
+        assertThat(handler.isNotSampled(attachments), equalTo(true));
+    }
+
+    @Test
+    public void testThatTextMapIsExtractedWithoutAttachment() {
+        CompactPropagation propagation = new CompactPropagation(1024, 8);
+        Map<String, String> attachments = new HashMap<>();
+        try (ActiveSpan span = mockTracer.buildSpan("client").startActive()) {
+            mockTracer.inject(span.context(), Format.Builtin.TEXT_MAP, new TextMapInjectAdapter(attachments));
+
+            SpanContext context = propagation.extract(mockTracer, attachments);
+            assertThat(((MockSpan.MockContext) context).spanId(),
+                    equalTo(((MockSpan.MockContext) span.context()).spanId()));
+        }
+    }
+
+    @Test
+    public void testThatBaggageIsBounded() {
+        CompactPropagation propagation = new CompactPropagation(1024, 1);
+        Map<String, String> textMap = new LinkedHashMap<>();
+        textMap.put("traceid", "1");
+        textMap.put("spanid", "2");
+        textMap.put("a", "x");
+        textMap.put("b", "y");
+        Set<String> baggageKeys = new HashSet<>(Arrays.asList("a", "b"));
+        String encoded = propagation.encode(prefixed(textMap), baggageKeys);
+        assertThat(encoded, equalTo("1;traceid=1,spanid=2,baggage-a=x"));
+
+        propagation = new CompactPropagation(27, 8);
+        encoded = propagation.encode(prefixed(textMap), baggageKeys);
+        assertThat(encoded, equalTo("1;traceid=1,spanid=2"));
+    }
+
+    @Test
+    public void testThatBaggageNamedLikeTheIdentityIsNotMistakenForIt() {
+        Set<String> baggageKeys = new HashSet<>(Arrays.asList("id"));
+        assertThat(CompactPropagation.isBaggage("traceid", baggageKeys), equalTo(false));
+        assertThat(CompactPropagation.isBaggage("spanid", baggageKeys), equalTo(false));
+        assertThat(CompactPropagation.isBaggage("baggage-id", baggageKeys), equalTo(true));
+
+        CompactPropagation propagation = new CompactPropagation(1024, 0);
+        Map<String, String> textMap = new LinkedHashMap<>();
+        textMap.put("traceid", "1");
+        textMap.put("spanid", "2");
+        textMap.put("baggage-id", "3");
+        assertThat(propagation.encode(textMap, baggageKeys), equalTo("1;traceid=1,spanid=2"));
+    }
+
+    private static Map<String, String> prefixed(Map<String, String> textMap) {
+        Map<String, String> prefixed = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : textMap.entrySet()) {
+            String key = field.getKey();
+            prefixed.put(key.endsWith("id") ? key : "baggage-" + key, field.getValue());
+        }
+        return prefixed;
+    }
+
+    @Test
+    public void testThatUnknownFormatIsRejected() {
+        Map<String, String> textMap = new HashMap<>();
+        assertThat(CompactPropagation.decode("2;x", textMap), equalTo(false));
+        assertThat(CompactPropagation.decode("1;traceid=1,spanid=2", textMap), equalTo(true));
+        assertThat(textMap.get("traceid"), equalTo("1"));
+        assertThat(textMap.get("spanid"), equalTo("2"));
+    }
+}
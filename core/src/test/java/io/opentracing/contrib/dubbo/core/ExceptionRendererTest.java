@@ -0,0 +1,82 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ExceptionRendererTest {
+
+    @Test
+    public void testThatRepeatedFailureOnlyCarriesReference() {
+        ExceptionRenderer renderer = new ExceptionRenderer(64, 8192, 2, 16, 5);
+        Map<String, String> first = null;
+        Map<String, String> last = null;
+        for (int i = 0; i < 5; i++) {
+            last = renderer.logsForException(fail("timeout " + i));
+            if (first == null) {
+                first = last;
+            }
+        }
+
+        assertNotNull(first.get(ExceptionRenderer.STACK));
+        assertNull(last.get(ExceptionRenderer.STACK));
+        assertThat(last.get(ExceptionRenderer.STACK_REF), equalTo(first.get(ExceptionRenderer.STACK_REF)));
+        assertThat(last.get(ExceptionRenderer.STACK_REPEATED), equalTo("3"));
+        assertThat(last.get("message"), equalTo("timeout 4"));
+    }
+
+    @Test
+    public void testThatEachStackCarriesItsOwnMessage() {
+        ExceptionRenderer renderer = new ExceptionRenderer(64, 8192, 2, 16, 5);
+        Map<String, String> first = null;
+        Map<String, String> second = null;
+        for (int i = 0; i < 2; i++) {
+            Throwable throwable = new IllegalStateException("call " + i, new IllegalArgumentException("cause " + i));
+            second = renderer.logsForException(throwable);
+            if (first == null) {
+                first = second;
+            }
+        }
+
+        String stack = second.get(ExceptionRenderer.STACK);
+        assertThat(second.get(ExceptionRenderer.STACK_REF), equalTo(first.get(ExceptionRenderer.STACK_REF)));
+        assertTrue(stack.startsWith("java.lang.IllegalStateException: call 1\n"));
+        assertTrue(stack.contains("Caused by: java.lang.IllegalArgumentException: cause 1"));
+        assertFalse(stack.contains("call 0"));
+    }
+
+    @Test
+    public void testThatDifferentFailuresHaveDifferentFingerprints() {
+        ExceptionRenderer renderer = new ExceptionRenderer(64, 8192, 2, 16, 5);
+        Map<String, String> timeout = renderer.logsForException(fail("timeout"));
+        Map<String, String> npe = renderer.logsForException(new NullPointerException());
+
+        assertThat(npe.get(ExceptionRenderer.STACK_REF), not(equalTo(timeout.get(ExceptionRenderer.STACK_REF))));
+        assertNotNull(npe.get(ExceptionRenderer.STACK));
+    }
+
+    @Test
+    public void testThatStackIsBounded() {
+        Throwable throwable = new IllegalStateException("outer", fail("inner"));
+        String stack = new ExceptionRenderer(2, 8192, 2, 16, 5).render(throwable, throwable.getStackTrace());
+        assertTrue(stack.startsWith("java.lang.IllegalStateException: outer\n\tat "));
+        assertTrue(stack.contains("Caused by: java.lang.IllegalStateException: inner"));
+        assertTrue(stack.contains(" more\n"));
+
+        stack = new ExceptionRenderer(64, 50, 2, 16, 5).render(throwable, throwable.getStackTrace());
+        assertThat(stack.length(), equalTo(50));
+        assertFalse(stack.contains("Caused by"));
+    }
+
+    private static IllegalStateException fail(String message) {
+        return new IllegalStateException(message);
+    }
+}
@@ -0,0 +1,109 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OperationCacheTest {
+
+    private static final String SERVICE = "org.xxx.BookService";
+    private static final Class<?>[] BOOK = new Class<?>[]{Book.class};
+
+    @Test
+    public void testThatOperationIsFormatted() {
+        OperationCache cache = new OperationCache(16);
+        OperationMetadata operation = cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, null);
+
+        assertThat(operation.getOperationName(), equalTo(SERVICE + ".getBooks(Book)"));
+        assertThat(operation.getRequestURL(), equalTo("dubbo://127.0.0.1:20880/" + SERVICE + ".getBooks(Book)"));
+        assertThat(operation.getComponent(), equalTo(TracingHandler.COMPONENT));
+        assertThat(cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "delete",
+                new Class<?>[]{String.class, long.class}, null).getOperationName(), equalTo(SERVICE + ".delete(String,long)"));
+        assertThat(cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "list", null, null)
+                .getOperationName(), equalTo(SERVICE + ".list()"));
+    }
+
+    @Test
+    public void testThatOperationIsCached() {
+        OperationCache cache = new OperationCache(16);
+        OperationMetadata operation = cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, null);
+
+        assertThat(cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", new Class<?>[]{Book.class}, null),
+                sameInstance(operation));
+        assertThat(cache.get("dubbo", "127.0.0.1", 20881, SERVICE, "getBooks", BOOK, null), not(sameInstance(operation)));
+        assertThat(cache.size(), equalTo(2));
+    }
+
+    @Test
+    public void testThatEndpointIsEvicted() {
+        OperationCache cache = new OperationCache(16);
+        cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, null);
+        cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooksWithTimeout", new Class<?>[]{long.class}, null);
+        cache.get("dubbo", "127.0.0.1", 20881, SERVICE, "getBooks", BOOK, null);
+
+        cache.evict("dubbo", "127.0.0.1", 20880, SERVICE);
+        assertThat(cache.size(), equalTo(1));
+    }
+
+    @Test
+    public void testThatSizeIsBounded() {
+        OperationCache cache = new OperationCache(2);
+        for (int port = 0; port < 10; port++) {
+            cache.get("dubbo", "127.0.0.1", port, SERVICE, "getBooks", BOOK, null);
+        }
+        assertThat(cache.size(), equalTo(2));
+    }
+
+    @Test
+    public void testThatUrlParametersAreRead() {
+        OperationCache cache = new OperationCache(16);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(OperationCache.TRACING_SAMPLE, "0.1");
+        parameters.put(OperationCache.TRACING_ARGS, "true");
+        parameters.put("getBooks." + OperationCache.TRACING, "false");
+        parameters.put("getBooks." + OperationCache.TRACING_SAMPLE, "0.01");
+        parameters.put("getBooks." + OperationCache.ASYNC, "true");
+
+        OperationMetadata getBooks = cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, parameters);
+        assertFalse(getBooks.isTracing());
+        assertThat(getBooks.getSampleRate(), equalTo(0.01));
+        assertThat(getBooks.getCaptureArguments(), equalTo(Boolean.TRUE));
+        assertTrue(getBooks.isAsync());
+
+        OperationMetadata list = cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "list", null, parameters);
+        assertTrue(list.isTracing());
+        assertThat(list.getSampleRate(), equalTo(0.1));
+        assertFalse(list.isAsync());
+
+        OperationMetadata defaults = cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "list", null, null);
+        assertTrue(defaults.isTracing());
+        assertThat(defaults.getSampleRate(), equalTo(-1.0));
+        assertThat(defaults.getCaptureArguments(), nullValue());
+    }
+
+    @Test
+    public void testThatOverriddenParametersAreReadAgain() {
+        OperationCache cache = new OperationCache(16);
+        Map<String, String> parameters = new HashMap<>();
+        OperationMetadata operation = cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, parameters);
+        assertThat(cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, parameters),
+                sameInstance(operation));
+
+        Map<String, String> overridden = new HashMap<>(parameters);
+        overridden.put(OperationCache.TRACING, "false");
+        assertFalse(cache.get("dubbo", "127.0.0.1", 20880, SERVICE, "getBooks", BOOK, overridden).isTracing());
+        assertTrue(operation.isTracing());
+    }
+
+    static class Book {
+    }
+}
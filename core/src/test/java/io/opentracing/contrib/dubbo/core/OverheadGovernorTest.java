@@ -0,0 +1,115 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.opentracing.NoopTracerFactory;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapInjectAdapter;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OverheadGovernorTest {
+
+    private static final OperationMetadata OPERATION = new OperationCache(16)
+            .get("dubbo", "127.0.0.1", 20880, "org.xxx.Test", "test", new Class<?>[0], null);
+
+    private final OverheadGovernor governor = new OverheadGovernor(new ConstSampler(true), new TracingMetrics(),
+            null, 0.02, 0.5, 1000, 2);
+
+    @Test
+    public void testThatFiltersShareTheGovernorOfTheProcess() {
+        System.setProperty(TracingConfig.GOVERNOR, "true");
+        TracingHandler first;
+        TracingHandler second;
+        try {
+            first = new TracingHandler(NoopTracerFactory.create());
+            second = new TracingHandler(NoopTracerFactory.create());
+        } finally {
+            System.clearProperty(TracingConfig.GOVERNOR);
+        }
+
+        assertThat(first.getGovernor(), notNullValue());
+        assertThat(second.getGovernor(), sameInstance(first.getGovernor()));
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("opentracing-dubbo-governor".equals(thread.getName())) {
+                threads++;
+            }
+        }
+        assertThat(threads, equalTo(1));
+    }
+
+    @Test
+    public void testThatGovernorStepsDownUntilNoNewTraceIsSampled() {
+        for (int i = 1; i < OverheadGovernor.RATES.length; i++) {
+            governor.evaluate(0.05, 0, 10);
+            assertThat(governor.getStep(), equalTo(i));
+        }
+        governor.evaluate(0.05, 0, 10);
+
+        assertThat(governor.getSampleRate(), equalTo(0.0));
+        assertFalse(governor.isSampled("test"));
+        assertThat(governor.getStepsDown(), equalTo((long) OverheadGovernor.RATES.length - 1));
+    }
+
+    @Test
+    public void testThatTracesSampledUpstreamAreContinuedAtTheLastStep() {
+        for (int i = 1; i < OverheadGovernor.RATES.length; i++) {
+            governor.evaluate(0.05, 0, 10);
+        }
+        MockTracer mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        TracingHandler handler = new TracingHandler(mockTracer, governor, false);
+        Map<String, String> attachments = new HashMap<>();
+        mockTracer.inject(mockTracer.buildSpan("upstream").startManual().context(), Format.Builtin.TEXT_MAP,
+                new TextMapInjectAdapter(attachments));
+
+        assertTrue(handler.isActive());
+        assertThat(handler.newSpan(false, new HashMap<String, String>(), OPERATION), nullValue());
+        TracingHandler.Span span = handler.newSpan(false, attachments, OPERATION);
+        assertThat(span, notNullValue());
+        span.close();
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+    }
+
+    @Test
+    public void testThatEveryBudgetIsWatched() {
+        governor.evaluate(0, 0.9, 10);
+        governor.evaluate(0, 0, 5000);
+
+        assertThat(governor.getStep(), equalTo(2));
+    }
+
+    @Test
+    public void testThatGovernorRecoversWithHysteresis() {
+        governor.evaluate(0.05, 0, 10);
+        governor.evaluate(0.05, 0, 10);
+
+        // under budget but above half of it
+        governor.evaluate(0.015, 0, 10);
+        governor.evaluate(0.015, 0, 10);
+        governor.evaluate(0.015, 0, 10);
+        assertThat(governor.getStep(), equalTo(2));
+
+        governor.evaluate(0.005, 0, 10);
+        assertThat(governor.getStep(), equalTo(2));
+        governor.evaluate(0.005, 0, 10);
+        assertThat(governor.getStep(), equalTo(1));
+        governor.evaluate(0.005, 0, 10);
+        governor.evaluate(0.005, 0, 10);
+
+        assertThat(governor.getStep(), equalTo(0));
+        assertTrue(governor.isSampled("test"));
+        assertThat(governor.getStepsUp(), equalTo(2L));
+    }
+}
@@ -0,0 +1,46 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SamplerTest {
+
+    private static final String OPERATION = "org.xxx.Test.test(String)";
+
+    @Test
+    public void testThatProbabilisticSamplerHonoursBounds() {
+        assertTrue(new ProbabilisticSampler(1).isSampled(OPERATION));
+        assertFalse(new ProbabilisticSampler(0).isSampled(OPERATION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatProbabilisticSamplerRejectsInvalidRate() {
+        new ProbabilisticSampler(1.5);
+    }
+
+    @Test
+    public void testThatRateLimitingSamplerLimitsEachOperation() {
+        RateLimitingSampler sampler = new RateLimitingSampler(5);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampler.isSampled(OPERATION)) {
+                sampled++;
+            }
+        }
+        assertThat(sampled, equalTo(5));
+        assertTrue(sampler.isSampled("org.xxx.Test.other()"));
+    }
+
+    @Test
+    public void testThatTokenBucketRefills() {
+        RateLimitingSampler.TokenBucket bucket = new RateLimitingSampler.TokenBucket(1);
+        long now = System.nanoTime();
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now + 1000000000L));
+    }
+}
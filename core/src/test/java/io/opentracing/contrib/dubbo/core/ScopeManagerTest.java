@@ -0,0 +1,90 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.Span;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ScopeManagerTest {
+
+    private final MockTracer mockTracer =
+            new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+
+    @Test
+    public void testThatActiveSpanScopeRestoresWithoutFinishing() {
+        ScopeManager scopeManager = new ActiveSpanScopeManager(mockTracer);
+        Span span = mockTracer.buildSpan("call").startManual();
+        Scope scope = scopeManager.activate(span);
+        assertThat(mockTracer.activeSpan().context(), sameInstance(span.context()));
+
+        scope.close();
+        assertThat(mockTracer.activeSpan(), nullValue());
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+        span.finish();
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+    }
+
+    @Test
+    public void testThatThreadLocalScopesNestAndFallBackToTheTracer() {
+        ScopeManager scopeManager = new ThreadLocalScopeManager(mockTracer);
+        try (ActiveSpan application = mockTracer.buildSpan("application").startActive()) {
+            Span outer = mockTracer.buildSpan("outer").startManual();
+            Span inner = mockTracer.buildSpan("inner").startManual();
+            Scope outerScope = scopeManager.activate(outer);
+            Scope innerScope = scopeManager.activate(inner);
+            assertThat(scopeManager.activeSpan(), sameInstance((Object) inner));
+            assertThat(mockTracer.activeSpan(), sameInstance(application));
+
+            innerScope.close();
+            assertThat(scopeManager.activeSpan(), sameInstance((Object) outer));
+            outerScope.close();
+            assertThat(scopeManager.activeSpan(), sameInstance((Object) application));
+        }
+        assertThat(scopeManager.activeSpan(), nullValue());
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+    }
+
+    @Test
+    public void testThatDetachedSpanIsFinishedFromAnotherThread() throws InterruptedException {
+        System.setProperty(TracingConfig.SCOPE, ThreadLocalScopeManager.TYPE);
+        TracingHandler tracingHandler;
+        try {
+            tracingHandler = new TracingHandler(mockTracer);
+        } finally {
+            System.clearProperty(TracingConfig.SCOPE);
+        }
+        OperationMetadata operation = new OperationMetadata("test()", "dubbo://127.0.0.1:20880/test()",
+                TracingHandler.COMPONENT, false);
+
+        TracingHandler.Span server = tracingHandler.newSpan(false, new HashMap<String, String>(), operation);
+        final TracingHandler.Span client = tracingHandler.newSpan(true, new HashMap<String, String>(), operation);
+        client.detach();
+        server.close();
+        assertThat(mockTracer.activeSpan(), nullValue());
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                client.finish();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(2));
+        MockSpan serverSpan = mockTracer.finishedSpans().get(0);
+        MockSpan clientSpan = mockTracer.finishedSpans().get(1);
+        assertThat(clientSpan.parentId(), equalTo(serverSpan.context().spanId()));
+    }
+}
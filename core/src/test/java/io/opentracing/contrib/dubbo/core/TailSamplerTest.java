@@ -0,0 +1,145 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertChildOfParent;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertClientSpanTag;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertHasArguments;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertServerSpanTag;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertSpanError;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class TailSamplerTest {
+
+    private static final OperationMetadata OPERATION = new OperationCache(16)
+            .get("dubbo", "127.0.0.1", 20880, "org.xxx.Test", "test", new Class<?>[]{String.class}, null);
+
+    private MockTracer mockTracer;
+
+    @Before
+    public void setUp() {
+        mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+    }
+
+    @Test
+    public void testThatFastTraceIsDropped() {
+        TailSampler tailSampler = new TailSampler(60000, 8);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(true), true, tailSampler);
+
+        serveWithNestedCall(handler, false);
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+        assertThat(tailSampler.getDroppedTraces(), equalTo(1L));
+        assertThat(mockTracer.activeSpan(), is(nullValue()));
+    }
+
+    @Test
+    public void testThatAbandonedSpansAreNeverFinished() {
+        TailSampler tailSampler = new TailSampler(60000, 2);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(true), true, tailSampler);
+
+        TracingHandler.Span server = handler.newSpan(false, new HashMap<String, String>(), OPERATION);
+        Map<String, String> attachments = new HashMap<>();
+        TracingHandler.Span client = handler.newSpan(true, attachments, OPERATION);
+        client.close();
+        TracingHandler.Span leaf = handler.newSpan(false, new HashMap<String, String>(), OPERATION);
+        leaf.close();
+        server.close();
+
+        assertThat(attachments.isEmpty(), is(false));
+        assertThat(leaf.context(), is(nullValue()));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+        assertThat(tailSampler.getOverflowedSpans(), equalTo(1L));
+    }
+
+    @Test
+    public void testThatFailedTraceIsKept() {
+        TailSampler tailSampler = new TailSampler(60000, 8);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(true), true, tailSampler);
+
+        serveWithNestedCall(handler, true);
+
+        List<MockSpan> allSpans = mockTracer.finishedSpans();
+        assertThat(allSpans.size(), equalTo(2));
+        assertThat(tailSampler.getKeptTraces(), equalTo(1L));
+        MockSpan client = allSpans.get(0).parentId() != 0 ? allSpans.get(0) : allSpans.get(1);
+        MockSpan server = client == allSpans.get(0) ? allSpans.get(1) : allSpans.get(0);
+        assertServerSpanTag(server);
+        assertClientSpanTag(client);
+        assertSpanError(client);
+        assertHasArguments(client);
+        assertThat(client.tags().get(TracingHandler.PEER_ADDRESS), equalTo((Object) "127.0.0.1:20880"));
+        assertChildOfParent(client, server);
+    }
+
+    @Test
+    public void testThatSlowTraceIsKept() {
+        TailSampler tailSampler = new TailSampler(0, 8);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(true), true, tailSampler);
+
+        serveWithNestedCall(handler, false);
+        serveWithNestedCall(handler, false);
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(4));
+        assertThat(tailSampler.getKeptTraces(), equalTo(2L));
+    }
+
+    @Test
+    public void testThatBufferIsBounded() {
+        TailSampler tailSampler = new TailSampler(0, 2);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(true), true, tailSampler);
+
+        TracingHandler.Span server = handler.newSpan(false, new HashMap<String, String>(), OPERATION);
+        for (int i = 0; i < 3; i++) {
+            handler.newSpan(true, new HashMap<String, String>(), OPERATION).close();
+        }
+        server.close();
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(2));
+        assertThat(tailSampler.getOverflowedSpans(), equalTo(2L));
+    }
+
+    @Test
+    public void testThatBufferIsReusedOnceDecided() {
+        TailSampler tailSampler = new TailSampler(60000, 8);
+        TracingHandler handler = new TracingHandler(mockTracer, new ConstSampler(true), true, tailSampler);
+
+        TracingHandler.Span server = handler.newSpan(false, new HashMap<String, String>(), OPERATION);
+        TraceBuffer buffer = TracingContext.get().getTraceBuffer();
+        TracingHandler.Span client = handler.newSpan(true, new HashMap<String, String>(), OPERATION);
+        client.detach();
+        server.close();
+        assertThat(TracingContext.get().getTraceBuffer(), is(nullValue()));
+
+        client.finish();
+        server = handler.newSpan(false, new HashMap<String, String>(), OPERATION);
+        assertThat(TracingContext.get().getTraceBuffer(), sameInstance(buffer));
+        server.close();
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    private static void serveWithNestedCall(TracingHandler handler, boolean fail) {
+        TracingHandler.Span server = handler.newSpan(false, new HashMap<String, String>(), OPERATION);
+        Map<String, String> attachments = new HashMap<>();
+        TracingHandler.Span client = handler.newSpan(true, attachments, OPERATION);
+        client.setRemoteAddress("127.0.0.1:20880");
+        if (fail) {
+            client.error(new IllegalStateException(), new Object[]{"book"});
+        }
+        client.close();
+        server.close();
+    }
+}
@@ -0,0 +1,42 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TraceStoreTest {
+
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 20880);
+
+    @Test
+    public void testThatSlowestAndRecentCallsAreKept() {
+        TraceStore store = new TraceStore("test()", OperationMetrics.PROVIDER, 4, 3);
+        for (int i = 1; i <= 100; i++) {
+            store.record(i, i * 10, i % 25 == 0, ADDRESS, null);
+        }
+
+        List<TraceStore.Entry> slowest = new ArrayList<>();
+        store.addSlowest(slowest);
+        assertThat(slowest.size(), equalTo(3));
+        for (TraceStore.Entry entry : slowest) {
+            assertTrue(entry.getDurationMicros() >= 980);
+        }
+
+        List<TraceStore.Entry> recent = new ArrayList<>();
+        store.addRecent(recent);
+        assertThat(recent.size(), equalTo(4));
+        for (TraceStore.Entry entry : recent) {
+            assertTrue(entry.getStartMillis() > 96);
+        }
+
+        List<TraceStore.Entry> errors = new ArrayList<>();
+        store.addErrors(errors);
+        assertThat(errors.size(), equalTo(4));
+    }
+}
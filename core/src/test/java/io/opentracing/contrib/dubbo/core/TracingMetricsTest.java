@@ -0,0 +1,62 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TracingMetricsTest {
+
+    @Test
+    public void testThatBucketsAreWithinOneSixteenth() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456, 1L << 31, (1L << 32) - 1};
+        for (long value : values) {
+            int index = LatencyHistogram.index(value);
+            long lower = LatencyHistogram.lowerBound(index);
+            long upper = LatencyHistogram.lowerBound(index + 1);
+            assertTrue(value + " in [" + lower + "," + upper + ")", lower <= value && value < upper);
+            assertTrue(upper - lower <= Math.max(1, value / 16 + 1));
+        }
+        assertThat(LatencyHistogram.index(Long.MAX_VALUE), equalTo(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testThatPercentilesAreRecorded() {
+        OperationMetrics metrics = new OperationMetrics("test()", OperationMetrics.PROVIDER);
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(i * 1000L, i % 10 == 0);
+        }
+
+        OperationMetrics.Snapshot snapshot = metrics.snapshot(false);
+        assertThat(snapshot.getCalls(), equalTo(100L));
+        assertThat(snapshot.getErrors(), equalTo(10L));
+        assertThat(snapshot.getTotalMicros(), equalTo(5050L));
+        assertThat(snapshot.getLatencyPercentile(50), equalTo(51L));
+        assertThat(snapshot.getLatencyPercentile(99), equalTo(99L));
+        assertThat(snapshot.getLatencyPercentile(100), equalTo(103L));
+    }
+
+    @Test
+    public void testThatStripedCounterSumsThreads() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < 10000; n++) {
+                        counter.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counter.sumThenReset(), equalTo(40000L));
+        assertThat(counter.sum(), equalTo(0L));
+    }
+}
@@ -0,0 +1,48 @@
+package io.opentracing.contrib.dubbo.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TracingRulesTest {
+
+    private static final String SERVICE = "org.xxx.BookService";
+
+    @Test
+    public void testThatEchoIsExcludedByDefault() {
+        TracingRules rules = new TracingRules(TracingRules.DEFAULT_RULES);
+
+        assertFalse(rules.isTraced(SERVICE + ".$echo(Object)", true));
+        assertTrue(rules.isTraced(SERVICE + ".getBooks(Book)", true));
+        assertTrue(rules.isTraced(SERVICE + ".echo(Object)", false));
+    }
+
+    @Test
+    public void testThatFirstMatchingRuleApplies() {
+        TracingRules rules = new TracingRules("consumer:" + SERVICE + ".poll*=exclude;"
+                + "org.xxx.*=include;*=exclude");
+
+        assertFalse(rules.isTraced(SERVICE + ".pollBooks()", true));
+        assertTrue(rules.isTraced(SERVICE + ".pollBooks()", false));
+        assertTrue(rules.isTraced(SERVICE + ".getBooks(Book)", true));
+        assertFalse(rules.isTraced("com.xxx.UserService.login(String)", false));
+    }
+
+    @Test
+    public void testThatDecisionIsCachedPerSide() {
+        TracingRules rules = new TracingRules("provider:*.getBooks=exclude");
+        OperationMetadata operation = new OperationMetadata(SERVICE + ".getBooks(Book)",
+                "dubbo://127.0.0.1:20880/" + SERVICE + ".getBooks(Book)", TracingHandler.COMPONENT, false);
+
+        assertTrue(rules.isTraced(operation, true));
+        assertFalse(rules.isTraced(operation, false));
+        assertTrue(operation.getTraced(true));
+        assertFalse(operation.getTraced(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatUnknownActionIsRejected() {
+        new TracingRules("*.$echo=skip");
+    }
+}
@@ -0,0 +1,107 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Measurements taken on the IO threads, kept aside for the filter instead of being written as attachments, so
+ * that stamping a message allocates nothing and nothing stamped is ever sent or read from the wire: the size and
+ * serialization time from the {@link TracingCodecWrapper}, the receipt time from the {@link TracingDispatcherWrapper}.
+ * <p>
+ * A fixed table of slots indexed by the identity hash of the invocation or result. A slot is claimed by storing
+ * its message after clearing it, and its values are only trusted while that message is still there, so a message
+ * whose slot was taken by another one just has no measurements. The filter releases the slot once read; the
+ * slots of messages never read, e.g. the results of asynchronous calls, are overwritten in time.
+ */
+final class MessageStamps {
+
+    private static final int SIZE = 1024;
+    private static final int MASK = SIZE - 1;
+
+    private static final AtomicReferenceArray<Object> MESSAGES = new AtomicReferenceArray<>(SIZE);
+    private static final long[] BYTES = new long[SIZE];
+    private static final long[] NANOS = new long[SIZE];
+    private static final long[] RECEIVED = new long[SIZE];
+
+    private MessageStamps() {
+    }
+
+    /**
+     * @param bytes the size of the message, -1 when unknown.
+     * @param nanos the time to encode or decode it.
+     */
+    static void stamp(Object message, long bytes, long nanos) {
+        int index = claim(message);
+        BYTES[index] = bytes;
+        NANOS[index] = nanos;
+        MESSAGES.set(index, message);
+    }
+
+    /**
+     * @param nanos when the request was received, from {@link System#nanoTime()}.
+     */
+    static void stampReceived(Object message, long nanos) {
+        int index = claim(message);
+        RECEIVED[index] = nanos;
+        MESSAGES.set(index, message);
+    }
+
+    /**
+     * Clear the slot of the message, keeping its values only if they are already the message's.
+     */
+    private static int claim(Object message) {
+        int index = index(message);
+        boolean own = MESSAGES.get(index) == message;
+        MESSAGES.set(index, null);
+        if (!own) {
+            BYTES[index] = -1;
+            NANOS[index] = -1;
+            RECEIVED[index] = -1;
+        }
+        return index;
+    }
+
+    /**
+     * The size of the message, -1 when it was not measured.
+     */
+    static long getBytes(Object message) {
+        int index = index(message);
+        if (MESSAGES.get(index) != message) {
+            return -1;
+        }
+        long bytes = BYTES[index];
+        return MESSAGES.get(index) == message ? bytes : -1;
+    }
+
+    /**
+     * The time to encode or decode the message, -1 when it was not measured.
+     */
+    static long getNanos(Object message) {
+        int index = index(message);
+        if (MESSAGES.get(index) != message) {
+            return -1;
+        }
+        long nanos = NANOS[index];
+        return MESSAGES.get(index) == message ? nanos : -1;
+    }
+
+    /**
+     * When the request was received, from {@link System#nanoTime()}, -1 when it was not stamped.
+     */
+    static long getReceived(Object message) {
+        int index = index(message);
+        if (MESSAGES.get(index) != message) {
+            return -1;
+        }
+        long received = RECEIVED[index];
+        return MESSAGES.get(index) == message ? received : -1;
+    }
+
+    static void release(Object message) {
+        MESSAGES.compareAndSet(index(message), message, null);
+    }
+
+    private static int index(Object message) {
+        int hash = System.identityHashCode(message);
+        return (hash ^ hash >>> 16) & MASK;
+    }
+}
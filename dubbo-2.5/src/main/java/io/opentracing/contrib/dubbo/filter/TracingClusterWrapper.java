@@ -0,0 +1,98 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.ExtensionLoader;
+import com.alibaba.dubbo.rpc.Filter;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.cluster.Cluster;
+import com.alibaba.dubbo.rpc.cluster.Directory;
+import com.alibaba.dubbo.rpc.cluster.directory.AbstractDirectory;
+
+import io.opentracing.contrib.dubbo.core.TracingConfig;
+
+/**
+ * With dubbo.tracing.cluster=true, traces a consumer call as one client span over all the attempts made by the
+ * cluster (e.g. retries="3" of the failover cluster), instead of one span per attempt. Each attempt is logged on
+ * that span with its number, address and outcome, and the dubbo.attempts tag counts them.
+ * <p>
+ * Attempts made on other threads, like those of the forking cluster, keep their own spans.
+ */
+public class TracingClusterWrapper implements Cluster {
+
+    private static final boolean ENABLED = TracingConfig.getBoolean(TracingConfig.CLUSTER, false);
+
+    private final Cluster cluster;
+
+    public TracingClusterWrapper(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public <T> Invoker<T> join(Directory<T> directory) throws RpcException {
+        Invoker<T> invoker = cluster.join(directory);
+        if (!ENABLED) {
+            return invoker;
+        }
+        TracingFilter filter = (TracingFilter) ExtensionLoader.getExtensionLoader(Filter.class)
+                .getExtension("opentracingFilter");
+        return new TracingClusterInvoker<>(invoker, directory, filter);
+    }
+
+    static class TracingClusterInvoker<T> implements Invoker<T> {
+        private final Invoker<T> invoker;
+        private final Directory<T> directory;
+        private final TracingFilter filter;
+
+        TracingClusterInvoker(Invoker<T> invoker, Directory<T> directory, TracingFilter filter) {
+            this.invoker = invoker;
+            this.directory = directory;
+            this.filter = filter;
+        }
+
+        @Override
+        public Result invoke(Invocation invocation) throws RpcException {
+            return filter.invokeCluster(invoker, getConsumerUrl(), invocation);
+        }
+
+        /**
+         * The url of the reference, with its parameters, rather than the one of its registry.
+         */
+        private URL getConsumerUrl() {
+            if (directory instanceof AbstractDirectory) {
+                URL url = ((AbstractDirectory<T>) directory).getConsumerUrl();
+                if (url != null) {
+                    return url;
+                }
+            }
+            return invoker.getUrl();
+        }
+
+        @Override
+        public Class<T> getInterface() {
+            return invoker.getInterface();
+        }
+
+        @Override
+        public URL getUrl() {
+            return invoker.getUrl();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return invoker.isAvailable();
+        }
+
+        @Override
+        public void destroy() {
+            invoker.destroy();
+        }
+
+        @Override
+        public String toString() {
+            return invoker.toString();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.Codec2;
+import com.alibaba.dubbo.remoting.buffer.ChannelBuffer;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.support.MultiMessage;
+import com.alibaba.dubbo.rpc.RpcInvocation;
+import com.alibaba.dubbo.rpc.RpcResult;
+
+import java.io.IOException;
+
+import io.opentracing.contrib.dubbo.core.TracingConfig;
+
+/**
+ * Measures the bytes and the time to encode requests and decode requests and responses, from the indexes of the
+ * buffer, and keeps them in the {@link MessageStamps} of the invocation or result, read by the filter. Decoding
+ * includes deserialization unless decode.in.io=false, which defers it to the thread pool. Disabled with
+ * dubbo.tracing.payload=false.
+ * <p>
+ * The response of a provider is encoded after its span is finished, its size is measured by the consumer.
+ */
+public class TracingCodecWrapper implements Codec2 {
+
+    private static final boolean ENABLED = TracingConfig.getBoolean(TracingConfig.PAYLOAD, true);
+
+    private final Codec2 codec;
+
+    public TracingCodecWrapper(Codec2 codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void encode(Channel channel, ChannelBuffer buffer, Object message) throws IOException {
+        RpcInvocation invocation = ENABLED ? getInvocation(message) : null;
+        if (invocation == null) {
+            codec.encode(channel, buffer, message);
+            return;
+        }
+
+        int writerIndex = buffer.writerIndex();
+        long start = System.nanoTime();
+        codec.encode(channel, buffer, message);
+        MessageStamps.stamp(invocation, buffer.writerIndex() - writerIndex, System.nanoTime() - start);
+    }
+
+    @Override
+    public Object decode(Channel channel, ChannelBuffer buffer) throws IOException {
+        if (!ENABLED) {
+            return codec.decode(channel, buffer);
+        }
+
+        int readerIndex = buffer.readerIndex();
+        long start = System.nanoTime();
+        Object message = codec.decode(channel, buffer);
+        long nanos = System.nanoTime() - start;
+        if (message instanceof MultiMessage) {
+            MultiMessage messages = (MultiMessage) message;
+            for (Object decoded : messages) {
+                stampDecoded(decoded, -1, nanos / messages.size());
+            }
+        } else if (message != DecodeResult.NEED_MORE_INPUT) {
+            stampDecoded(message, buffer.readerIndex() - readerIndex, nanos);
+        }
+        return message;
+    }
+
+    private static RpcInvocation getInvocation(Object message) {
+        if (message instanceof Request) {
+            Object data = ((Request) message).getData();
+            if (data instanceof RpcInvocation) {
+                return (RpcInvocation) data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param bytes the size of the message, -1 when several were decoded together and the counting codec of the
+     * dubbo protocol measured each one.
+     */
+    private static void stampDecoded(Object message, long bytes, long nanos) {
+        RpcInvocation invocation = getInvocation(message);
+        if (invocation != null) {
+            MessageStamps.stamp(invocation,
+                    bytes >= 0 ? bytes : parse(invocation.getAttachment(Constants.INPUT_KEY)), nanos);
+        } else if (message instanceof Response && ((Response) message).getResult() instanceof RpcResult) {
+            RpcResult result = (RpcResult) ((Response) message).getResult();
+            MessageStamps.stamp(result, bytes >= 0 ? bytes : parse(result.getAttachment(Constants.OUTPUT_KEY)), nanos);
+        }
+    }
+
+    private static long parse(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
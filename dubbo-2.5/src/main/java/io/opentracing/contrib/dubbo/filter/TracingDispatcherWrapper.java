@@ -0,0 +1,52 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.ChannelHandler;
+import com.alibaba.dubbo.remoting.Dispatcher;
+import com.alibaba.dubbo.remoting.RemotingException;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.transport.AbstractChannelHandlerDelegate;
+import com.alibaba.dubbo.rpc.RpcInvocation;
+
+import io.opentracing.contrib.dubbo.core.TracingConfig;
+
+/**
+ * Stamps the requests received on the IO thread before they are dispatched to the thread pool, so that the filter
+ * can tell the time they waited in its queue. The stamp is kept in {@link MessageStamps}, never in an attachment.
+ * Disabled with dubbo.tracing.queue_wait=false.
+ */
+public class TracingDispatcherWrapper implements Dispatcher {
+
+    private static final boolean ENABLED = TracingConfig.getBoolean(TracingConfig.QUEUE_WAIT, true);
+
+    private final Dispatcher dispatcher;
+
+    public TracingDispatcherWrapper(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public ChannelHandler dispatch(ChannelHandler handler, URL url) {
+        ChannelHandler dispatched = dispatcher.dispatch(handler, url);
+        return ENABLED ? new ReceiveTimeHandler(dispatched) : dispatched;
+    }
+
+    static class ReceiveTimeHandler extends AbstractChannelHandlerDelegate {
+
+        ReceiveTimeHandler(ChannelHandler handler) {
+            super(handler);
+        }
+
+        @Override
+        public void received(Channel channel, Object message) throws RemotingException {
+            if (message instanceof Request) {
+                Object data = ((Request) message).getData();
+                if (data instanceof RpcInvocation) {
+                    MessageStamps.stampReceived(data, System.nanoTime());
+                }
+            }
+            super.received(channel, message);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.rpc.Exporter;
+import com.alibaba.dubbo.rpc.listener.ExporterListenerAdapter;
+
+import io.opentracing.contrib.dubbo.core.OperationCache;
+
+/**
+ * Drop the cached operations of a service when it is unexported.
+ */
+@Activate
+public class TracingExporterListener extends ExporterListenerAdapter {
+
+    @Override
+    public void unexported(Exporter<?> exporter) {
+        URL url = exporter.getInvoker().getUrl();
+        if (url != null) {
+            OperationCache.getInstance().evict(url.getProtocol(), url.getHost(), url.getPort(), url.getPath());
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.rpc.Filter;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.RpcResult;
+import com.alibaba.dubbo.rpc.support.RpcUtils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.contrib.dubbo.core.FanOutCompressor;
+import io.opentracing.contrib.dubbo.core.MicrosClock;
+import io.opentracing.contrib.dubbo.core.OperationCache;
+import io.opentracing.contrib.dubbo.core.OperationMetadata;
+import io.opentracing.contrib.dubbo.core.OperationMetrics;
+import io.opentracing.contrib.dubbo.core.TracingConfig;
+import io.opentracing.contrib.dubbo.core.TracingContext;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.contrib.dubbo.core.TracingMetrics;
+
+/**
+ * Runs right inside the context filters, so that it is outside of the FutureFilter on asynchronous calls.
+ * <p>
+ * The calls of every operation are counted in {@link TracingMetrics}, sampled or not. The latency of an
+ * asynchronous consumer call is the time to send it, its response is measured on the provider side. The time
+ * spent by the filter itself, without the rest of the chain, is recorded per side as well.
+ */
+@Activate(group = {Constants.PROVIDER, Constants.CONSUMER}, order = -9000)
+public class TracingFilter implements Filter {
+
+    protected TracingHandler tracingHandler = new TracingHandler();
+    protected OperationCache operationCache = OperationCache.getInstance();
+    protected TracingMetrics tracingMetrics = TracingConfig.getBoolean(TracingConfig.METRICS, true)
+            ? TracingMetrics.getInstance() : null;
+    protected boolean overheadTag = TracingConfig.getBoolean(TracingConfig.OVERHEAD_TAG, false);
+    protected boolean deadlines = TracingConfig.getBoolean(TracingConfig.DEADLINE, false);
+    protected long deadlineSkewMillis = TracingConfig.getLong(TracingConfig.DEADLINE_SKEW, 0);
+    protected boolean payload = TracingConfig.getBoolean(TracingConfig.PAYLOAD, true);
+    protected boolean traceStore = TracingConfig.getBoolean(TracingConfig.STORE, false);
+
+    @Override
+    public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        if (!deadlines) {
+            return invokeFiltered(invoker, invocation);
+        }
+
+        TracingContext context = TracingContext.get();
+        long inbound = context.getDeadline();
+        URL url = invoker.getUrl();
+        if (isConsumer(url)) {
+            long deadline = System.currentTimeMillis()
+                    + url.getMethodParameter(invocation.getMethodName(), Constants.TIMEOUT_KEY,
+                    Constants.DEFAULT_TIMEOUT);
+            if (inbound > 0 && inbound < deadline) {
+                deadline = inbound;
+            }
+            RpcContext.getContext().setAttachment(TracingHandler.DEADLINE_ATTACHMENT, Long.toString(deadline));
+            return invokeFiltered(invoker, invocation);
+        }
+
+        String deadline = RpcContext.getContext().getAttachment(TracingHandler.DEADLINE_ATTACHMENT);
+        context.setDeadline(parseDeadline(deadline));
+        try {
+            return invokeFiltered(invoker, invocation);
+        } finally {
+            context.setDeadline(inbound);
+        }
+    }
+
+    private Result invokeFiltered(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        boolean active = tracingHandler.isActive();
+        if (!active && tracingMetrics == null) {
+            return proceed(invoker, invocation, false);
+        }
+        long queueWaitMicros = takeQueueWait(invocation);
+        if (tracingMetrics == null) {
+            boolean isConsumer = isConsumer(invoker.getUrl());
+            OperationMetadata operation = getOperation(invoker.getUrl(), invocation);
+            return tracingHandler.isTraced(operation, isConsumer)
+                    ? invokeTraced(isConsumer, operation, invoker, invocation, 0, queueWaitMicros)
+                    : proceed(invoker, invocation, false);
+        }
+
+        long start = System.nanoTime();
+        TracingContext context = TracingContext.get();
+        context.setDownstreamNanos(0);
+        TracingHandler.Span outerSpan = null;
+        if (traceStore) {
+            outerSpan = context.getTracedSpan();
+            context.setTracedSpan(null);
+        }
+        boolean isConsumer = isConsumer(invoker.getUrl());
+        OperationMetadata operation = getOperation(invoker.getUrl(), invocation);
+        OperationMetrics metrics = tracingMetrics.get(operation, isConsumer);
+        boolean error = true;
+        try {
+            Result result = active && tracingHandler.isTraced(operation, isConsumer)
+                    ? invokeTraced(isConsumer, operation, invoker, invocation, start, queueWaitMicros)
+                    : proceed(invoker, invocation);
+            error = result.hasException();
+            return result;
+        } finally {
+            long duration = System.nanoTime() - start;
+            metrics.record(duration, error);
+            if (payload && context.hasPayload()) {
+                metrics.getPayload().record(context.getRequestBytes(), context.getResponseBytes(),
+                        context.getSerializationNanos());
+            }
+            if (traceStore) {
+                metrics.getTraces().record(System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(duration),
+                        duration / 1000, error, RpcContext.getContext().getRemoteAddress(), context.getTracedSpan());
+                context.setTracedSpan(outerSpan);
+            }
+            tracingMetrics.getOverhead(isConsumer).record(duration - context.getDownstreamNanos(), duration);
+        }
+    }
+
+    /**
+     * @param start when the filter was entered, only used when its own time is measured.
+     */
+    private Result invokeTraced(boolean isConsumer,
+                                OperationMetadata operation,
+                                Invoker<?> invoker,
+                                Invocation invocation,
+                                long start,
+                                long queueWaitMicros) throws RpcException {
+        if (isConsumer && TracingContext.get().isClusterCall()) {
+            return invokeAttempt(invoker, invocation);
+        }
+        if (isConsumer && !isAsync(operation, invoker.getUrl(), invocation)) {
+            FanOutCompressor.Fold fold = tracingHandler.fold(operation);
+            if (fold != null) {
+                return invokeFolded(fold, operation, invoker, invocation);
+            }
+        }
+        Map<String, String> contextCarrier = getContextCarrier();
+        if (!isConsumer && tracingHandler.isNotSampled(contextCarrier)) {
+            return invokeNotSampled(false, operation, invoker, invocation);
+        }
+
+        TracingHandler.Span span = tracingHandler.newSpan(isConsumer, contextCarrier, operation);
+        if (span == null) {
+            return invokeNotSampled(isConsumer, operation, invoker, invocation);
+        }
+        span.setRemoteAddress(getRemoteAddress());
+        if (queueWaitMicros >= 0) {
+            span.setQueueWait(queueWaitMicros);
+        }
+
+        boolean async = false;
+        try {
+            Result result = proceed(invoker, invocation);
+            if (deadlines && TracingContext.get().isDeadlineExceeded()) {
+                span.setDeadlineExceeded();
+            }
+            if (payload) {
+                TracingContext context = TracingContext.get();
+                if (context.hasPayload()) {
+                    span.setPayload(context.getRequestBytes(), context.getResponseBytes(),
+                            context.getSerializationNanos());
+                }
+            }
+            if (isConsumer && isAsync(operation, invoker.getUrl(), invocation)) {
+                async = TracingResponseCallback.register(RpcContext.getContext().getFuture(), span,
+                        invocation.getArguments());
+            }
+            if (!async && result.hasException()) {
+                span.error(result.getException(), invocation.getArguments());
+            } else if (!async) {
+                span.success(invocation.getArguments());
+            }
+            return result;
+        } catch (Throwable e) {
+            span.error(e, invocation.getArguments());
+            throw e;
+        } finally {
+            if (traceStore) {
+                TracingContext.get().setTracedSpan(span);
+            }
+            if (!async) {
+                if (overheadTag && tracingMetrics != null) {
+                    span.setOverhead(System.nanoTime() - start - TracingContext.get().getDownstreamNanos());
+                }
+                span.close();
+            }
+        }
+    }
+
+    /**
+     * A logical call over the retries of the cluster, traced as a single client span. Its attempts go through
+     * the filter as well, and are logged on that span instead of having their own.
+     *
+     * @param url the url of the reference.
+     */
+    Result invokeCluster(Invoker<?> invoker, URL url, Invocation invocation) throws RpcException {
+        TracingContext context = TracingContext.get();
+        if (context.isClusterCall() || !tracingHandler.isActive()) {
+            return invoker.invoke(invocation);
+        }
+        OperationMetadata operation = getOperation(url, invocation);
+        if (!tracingHandler.isTraced(operation, true)) {
+            return invoker.invoke(invocation);
+        }
+
+        TracingHandler.Span span = tracingHandler.newSpan(true, getContextCarrier(), operation);
+        context.setClusterCall(true, span);
+        if (span == null) {
+            try {
+                return invokeNotSampled(true, operation, invoker, invocation);
+            } finally {
+                context.setClusterCall(false, null);
+            }
+        }
+
+        boolean async = false;
+        try {
+            Result result = invoker.invoke(invocation);
+            if (isAsync(operation, url, invocation)) {
+                async = TracingResponseCallback.register(RpcContext.getContext().getFuture(), span,
+                        invocation.getArguments());
+            }
+            if (!async && result.hasException()) {
+                span.error(result.getException(), invocation.getArguments());
+            } else if (!async) {
+                span.success(invocation.getArguments());
+            }
+            return result;
+        } catch (Throwable e) {
+            span.error(e, invocation.getArguments());
+            throw e;
+        } finally {
+            context.setClusterCall(false, null);
+            if (!async) {
+                span.close();
+            }
+        }
+    }
+
+    /**
+     * An attempt of a logical call, which propagates the span of that call to the provider.
+     */
+    private Result invokeAttempt(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        TracingHandler.Span span = TracingContext.get().getClusterSpan();
+        if (span == null) {
+            tracingHandler.injectNotSampled(getContextCarrier(), getOperation(invoker.getUrl(), invocation));
+            return proceed(invoker, invocation);
+        }
+
+        span.inject(getContextCarrier());
+        String remoteAddress = invoker.getUrl().getAddress();
+        try {
+            Result result = proceed(invoker, invocation);
+            span.attempt(remoteAddress, result.getException());
+            return result;
+        } catch (Throwable e) {
+            span.attempt(remoteAddress, e);
+            throw e;
+        }
+    }
+
+    /**
+     * A call folded into the composite span of its repeats, whose provider side is not sampled.
+     */
+    private Result invokeFolded(FanOutCompressor.Fold fold,
+                                OperationMetadata operation,
+                                Invoker<?> invoker,
+                                Invocation invocation) throws RpcException {
+        tracingHandler.injectNotSampled(getContextCarrier(), operation);
+        long startMicros = MicrosClock.nowMicros();
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            Result result = proceed(invoker, invocation);
+            error = result.getException();
+            return result;
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            tracingHandler.folded(fold, getRemoteAddress(), operation, startMicros, System.nanoTime() - start,
+                    error, invocation.getArguments());
+        }
+    }
+
+    /**
+     * Call without span. Nested calls made while serving it are not sampled either, and failures are still
+     * reported when errors are always sampled.
+     */
+    private Result invokeNotSampled(boolean isConsumer,
+                                    OperationMetadata operation,
+                                    Invoker<?> invoker,
+                                    Invocation invocation) throws RpcException {
+        TracingContext context = TracingContext.get();
+        boolean notSampled = context.isNotSampled();
+        context.setNotSampled(true);
+        long startMicros = tracingHandler.isSampleErrors() ? MicrosClock.nowMicros() : 0;
+        try {
+            Result result = proceed(invoker, invocation);
+            if (result.hasException() && tracingHandler.isSampleErrors()) {
+                tracingHandler.reportError(isConsumer, getRemoteAddress(), operation, startMicros,
+                        result.getException(), invocation.getArguments());
+            }
+            return result;
+        } catch (Throwable e) {
+            if (tracingHandler.isSampleErrors()) {
+                tracingHandler.reportError(isConsumer, getRemoteAddress(), operation, startMicros,
+                        e, invocation.getArguments());
+            }
+            throw e;
+        } finally {
+            context.setNotSampled(notSampled);
+        }
+    }
+
+    private Result proceed(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        return proceed(invoker, invocation, true);
+    }
+
+    /**
+     * Call the rest of the chain, timed when the filter measures its own time. Rejected instead when the call
+     * being served on this thread is past its deadline.
+     *
+     * @param measured whether the call is counted or traced, so that its time and payload are read.
+     */
+    private Result proceed(Invoker<?> invoker, Invocation invocation, boolean measured) throws RpcException {
+        if (deadlines) {
+            TracingContext context = TracingContext.get();
+            long late = context.getDeadline() > 0 ? System.currentTimeMillis() - context.getDeadline() : 0;
+            context.setDeadlineExceeded(late > deadlineSkewMillis);
+            if (late > deadlineSkewMillis) {
+                context.setDownstreamNanos(0);
+                context.setPayload(-1, -1, -1);
+                return new RpcResult(new RpcException(RpcException.TIMEOUT_EXCEPTION, "Deadline exceeded by "
+                        + late + " ms, " + invoker.getInterface().getName() + "." + invocation.getMethodName()
+                        + " not invoked"));
+            }
+        }
+        if (!measured || tracingMetrics == null && !payload) {
+            return invoker.invoke(invocation);
+        }
+        TracingContext context = TracingContext.get();
+        if (payload) {
+            context.setPayload(-1, -1, -1);
+        }
+        long start = System.nanoTime();
+        Result result;
+        try {
+            result = invoker.invoke(invocation);
+        } finally {
+            context.setDownstreamNanos(System.nanoTime() - start);
+        }
+        if (payload) {
+            readPayload(context, invocation, result);
+        }
+        return result;
+    }
+
+    /**
+     * Sizes and serialization time measured by the {@link TracingCodecWrapper}: the request encoded by a consumer
+     * or decoded by a provider, and the response decoded by a consumer.
+     */
+    private static void readPayload(TracingContext context, Invocation invocation, Result result) {
+        long requestNanos = MessageStamps.getNanos(invocation);
+        long responseNanos = MessageStamps.getNanos(result);
+        context.setPayload(MessageStamps.getBytes(invocation), MessageStamps.getBytes(result),
+                requestNanos < 0 && responseNanos < 0 ? -1 : Math.max(0, requestNanos) + Math.max(0, responseNanos));
+        MessageStamps.release(invocation);
+        MessageStamps.release(result);
+    }
+
+    /**
+     * The time a provider call waited for a thread, in microseconds, or -1 when its receipt was not stamped by
+     * the {@link TracingDispatcherWrapper}.
+     */
+    private long takeQueueWait(Invocation invocation) {
+        long received = MessageStamps.getReceived(invocation);
+        if (received < 0) {
+            return -1;
+        }
+        long waitMicros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - received));
+        if (tracingMetrics != null) {
+            tracingMetrics.getQueueWait().record(waitMicros);
+        }
+        return waitMicros;
+    }
+
+    private static long parseDeadline(String deadline) {
+        if (deadline == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(deadline);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Like {@link RpcUtils#isAsync}, without allocating: the url parameter is read from the operation, except for
+     * generic calls whose method is only known from their arguments.
+     */
+    private static boolean isAsync(OperationMetadata operation, URL url, Invocation invocation) {
+        if (Boolean.TRUE.toString().equals(invocation.getAttachment(Constants.ASYNC_KEY))) {
+            return true;
+        }
+        if (Constants.$INVOKE.equals(invocation.getMethodName())) {
+            return RpcUtils.isAsync(url, invocation);
+        }
+        return operation.isAsync();
+    }
+
+    private OperationMetadata getOperation(URL url, Invocation invocation) {
+        return operationCache.get(url.getProtocol(), url.getHost(), url.getPort(), url.getPath(),
+                invocation.getMethodName(), invocation.getParameterTypes(), url.getParameters());
+    }
+
+    /**
+     * From the side parameter of the invoker's url, {@link RpcContext#isConsumerSide()} resolves addresses.
+     */
+    private boolean isConsumer(URL url) {
+        String side = url.getParameter(Constants.SIDE_KEY);
+        if (side == null) {
+            return RpcContext.getContext().isConsumerSide();
+        }
+        return Constants.CONSUMER_SIDE.equals(side);
+    }
+
+    private Map<String, String> getContextCarrier() {
+        return RpcContext.getContext().getAttachments();
+    }
+
+    private String getRemoteAddress() {
+        return RpcContext.getContext().getRemoteAddressString();
+    }
+
+}
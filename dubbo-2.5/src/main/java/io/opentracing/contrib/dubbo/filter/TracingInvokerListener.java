@@ -0,0 +1,23 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.listener.InvokerListenerAdapter;
+
+import io.opentracing.contrib.dubbo.core.OperationCache;
+
+/**
+ * Drop the cached operations of a reference when its invoker is destroyed.
+ */
+@Activate
+public class TracingInvokerListener extends InvokerListenerAdapter {
+
+    @Override
+    public void destroyed(Invoker<?> invoker) {
+        URL url = invoker.getUrl();
+        if (url != null) {
+            OperationCache.getInstance().evict(url.getProtocol(), url.getHost(), url.getPort(), url.getPath());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
+import com.alibaba.dubbo.remoting.exchange.ResponseFuture;
+import com.alibaba.dubbo.remoting.exchange.support.DefaultFuture;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.protocol.dubbo.FutureAdapter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.Future;
+
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+
+/**
+ * Finishes the client span of an asynchronous call when its response, timeout or failure arrives.
+ * <p>
+ * A {@link ResponseFuture} holds a single callback, and Dubbo's FutureFilter registers its own for every
+ * asynchronous call. {@link TracingFilter} runs outside of it, so the callback already registered is chained.
+ * It is only readable from the private field of {@link DefaultFuture}: when that field cannot be read, the span
+ * is finished when the call is sent rather than replacing the callback of FutureFilter.
+ * <p>
+ * When the response arrives between reading the callback and setting ours, the future has already run the
+ * chained one, and runs ours right away on the registering thread. The chained callback is then not run again.
+ */
+class TracingResponseCallback implements ResponseCallback {
+    private static final Logger log = LoggerFactory.getLogger(TracingResponseCallback.class);
+
+    private static final Field CALLBACK_FIELD = callbackField();
+
+    private final TracingHandler.Span span;
+    private final Object[] arguments;
+    private final ResponseCallback delegate;
+    /**
+     * The thread setting the callback, while it does.
+     */
+    private volatile Thread registering;
+
+    private TracingResponseCallback(TracingHandler.Span span, Object[] arguments, ResponseCallback delegate) {
+        this.span = span;
+        this.arguments = arguments;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Detach the span and finish it when the future completes.
+     *
+     * @return false when the callback of the future cannot be chained, the span is then left untouched.
+     */
+    static boolean register(Future<?> future, TracingHandler.Span span, Object[] arguments) {
+        if (CALLBACK_FIELD == null || !(future instanceof FutureAdapter)
+                || !(((FutureAdapter<?>) future).getFuture() instanceof DefaultFuture)) {
+            return false;
+        }
+
+        DefaultFuture responseFuture = (DefaultFuture) ((FutureAdapter<?>) future).getFuture();
+        ResponseCallback delegate = responseFuture.isDone() ? null : getCallback(responseFuture);
+        TracingResponseCallback callback = new TracingResponseCallback(span, arguments, delegate);
+        span.detach();
+        callback.registering = Thread.currentThread();
+        try {
+            responseFuture.setCallback(callback);
+        } finally {
+            callback.registering = null;
+        }
+        return true;
+    }
+
+    @Override
+    public void done(Object response) {
+        try {
+            if (response instanceof Result && ((Result) response).hasException()) {
+                span.error(((Result) response).getException(), arguments);
+            } else {
+                span.success(arguments);
+            }
+            span.finish();
+        } finally {
+            if (isChained()) {
+                delegate.done(response);
+            }
+        }
+    }
+
+    @Override
+    public void caught(Throwable exception) {
+        try {
+            span.error(exception, arguments);
+            span.finish();
+        } finally {
+            if (isChained()) {
+                delegate.caught(exception);
+            }
+        }
+    }
+
+    /**
+     * Whether the chained callback is left to this one, false when the future ran it already.
+     */
+    private boolean isChained() {
+        return delegate != null && registering != Thread.currentThread();
+    }
+
+    private static ResponseCallback getCallback(DefaultFuture future) {
+        try {
+            return (ResponseCallback) CALLBACK_FIELD.get(future);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static Field callbackField() {
+        try {
+            Field field = DefaultFuture.class.getDeclaredField("callback");
+            if (!ResponseCallback.class.isAssignableFrom(field.getType())) {
+                throw new NoSuchFieldException("callback of " + field.getType());
+            }
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            log.warn("Spans of asynchronous calls will be finished when the calls are sent", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.extension.Activate;
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.telnet.TelnetHandler;
+import com.alibaba.dubbo.remoting.telnet.support.Help;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import io.opentracing.contrib.dubbo.core.TraceStore;
+import io.opentracing.contrib.dubbo.core.TracingMetrics;
+
+/**
+ * The calls kept by the {@link TraceStore} of each operation, listed from the telnet console of a node. Dubbo
+ * has a trace command of its own, so this one is named tracing, e.g.
+ * <pre>
+ * tracing top 20
+ * tracing slow BookService.getBooks
+ * tracing errors
+ * </pre>
+ * Methods match any operation whose name contains them. Sampled calls end with the ids of their span, e.g.
+ * traceid=1,spanid=2 with the TEXT_MAP fields of the tracer.
+ */
+@Activate
+@Help(parameter = "[top [count] | slow <method> | recent <method> | errors [method]]",
+        summary = "Show the slowest, recent or failed calls kept on this node.",
+        detail = "Show the slowest, recent or failed calls kept on this node, with -Ddubbo.tracing.store=true.")
+public class TracingTelnetHandler implements TelnetHandler {
+
+    static final int DEFAULT_COUNT = 10;
+
+    private static final Comparator<TraceStore.Entry> SLOWEST_FIRST = new Comparator<TraceStore.Entry>() {
+        @Override
+        public int compare(TraceStore.Entry a, TraceStore.Entry b) {
+            return Long.compare(b.getDurationMicros(), a.getDurationMicros());
+        }
+    };
+
+    private static final Comparator<TraceStore.Entry> LATEST_FIRST = new Comparator<TraceStore.Entry>() {
+        @Override
+        public int compare(TraceStore.Entry a, TraceStore.Entry b) {
+            return Long.compare(b.getStartMillis(), a.getStartMillis());
+        }
+    };
+
+    protected TracingMetrics tracingMetrics = TracingMetrics.getInstance();
+
+    @Override
+    public String telnet(Channel channel, String message) {
+        String[] args = message == null ? new String[0] : message.trim().split("\\s+");
+        String command = args.length > 0 && !args[0].isEmpty() ? args[0] : "top";
+        String argument = args.length > 1 ? args[1] : null;
+
+        List<TraceStore.Entry> entries = new ArrayList<>();
+        if ("top".equals(command)) {
+            for (TraceStore store : tracingMetrics.traceStores()) {
+                store.addSlowest(entries);
+            }
+            return format(entries, SLOWEST_FIRST, argument != null ? parseCount(argument) : DEFAULT_COUNT);
+        }
+        if ("errors".equals(command)) {
+            for (TraceStore store : stores(argument)) {
+                store.addErrors(entries);
+            }
+            return format(entries, LATEST_FIRST, Integer.MAX_VALUE);
+        }
+        if (argument == null) {
+            return "Please input a method, e.g. tracing " + command + " BookService.getBooks";
+        }
+        if ("slow".equals(command)) {
+            for (TraceStore store : stores(argument)) {
+                store.addSlowest(entries);
+            }
+            return format(entries, SLOWEST_FIRST, Integer.MAX_VALUE);
+        }
+        if ("recent".equals(command)) {
+            for (TraceStore store : stores(argument)) {
+                store.addRecent(entries);
+            }
+            return format(entries, LATEST_FIRST, Integer.MAX_VALUE);
+        }
+        return "Unknown tracing command " + command + ", expected top, slow, recent or errors";
+    }
+
+    private List<TraceStore> stores(String method) {
+        List<TraceStore> stores = tracingMetrics.traceStores();
+        if (method == null) {
+            return stores;
+        }
+        List<TraceStore> matched = new ArrayList<>();
+        for (TraceStore store : stores) {
+            if (store.getOperationName().contains(method)) {
+                matched.add(store);
+            }
+        }
+        return matched;
+    }
+
+    private static int parseCount(String count) {
+        try {
+            return Math.max(1, Integer.parseInt(count));
+        } catch (NumberFormatException e) {
+            return DEFAULT_COUNT;
+        }
+    }
+
+    private static String format(List<TraceStore.Entry> entries, Comparator<TraceStore.Entry> order, int count) {
+        if (entries.isEmpty()) {
+            return "No call kept.";
+        }
+        Collections.sort(entries, order);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < entries.size() && i < count; i++) {
+            TraceStore.Entry entry = entries.get(i);
+            if (i > 0) {
+                buf.append("\r\n");
+            }
+            buf.append(dateFormat.format(new Date(entry.getStartMillis())))
+                    .append(' ').append(entry.getDurationMicros()).append("us")
+                    .append(' ').append(entry.getSide())
+                    .append(' ').append(entry.getOperationName());
+            if (entry.getRemoteAddress() != null) {
+                buf.append(' ').append(entry.getRemoteAddress());
+            }
+            if (entry.isError()) {
+                buf.append(" error");
+            }
+            if (entry.getTraceId() != null) {
+                buf.append(' ').append(entry.getTraceId());
+            }
+        }
+        return buf.toString();
+    }
+}
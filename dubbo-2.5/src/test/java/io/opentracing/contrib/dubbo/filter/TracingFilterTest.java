@@ -0,0 +1,538 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.Constants;
+import com.alibaba.dubbo.common.URL;
+import com.alibaba.dubbo.rpc.Invocation;
+import com.alibaba.dubbo.rpc.Invoker;
+import com.alibaba.dubbo.rpc.Result;
+import com.alibaba.dubbo.rpc.RpcContext;
+import com.alibaba.dubbo.rpc.RpcException;
+import com.alibaba.dubbo.rpc.RpcInvocation;
+import com.alibaba.dubbo.rpc.RpcResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.NoopTracerFactory;
+import io.opentracing.contrib.dubbo.core.CompactPropagation;
+import io.opentracing.contrib.dubbo.core.ConstSampler;
+import io.opentracing.contrib.dubbo.core.FanOutCompressor;
+import io.opentracing.contrib.dubbo.core.FilterOverhead;
+import io.opentracing.contrib.dubbo.core.OperationCache;
+import io.opentracing.contrib.dubbo.core.OperationMetrics;
+import io.opentracing.contrib.dubbo.core.PayloadMetrics;
+import io.opentracing.contrib.dubbo.core.QueueWait;
+import io.opentracing.contrib.dubbo.core.TraceStore;
+import io.opentracing.contrib.dubbo.core.TracingConfig;
+import io.opentracing.contrib.dubbo.core.TracingContext;
+import io.opentracing.contrib.dubbo.core.TracingDeadline;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.contrib.dubbo.core.TracingMetrics;
+import io.opentracing.contrib.dubbo.filter.service.Book;
+import io.opentracing.contrib.dubbo.filter.service.BookService;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertServerSpanTag;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertSpanError;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TracingFilterTest {
+
+    private static final URL PROVIDER_URL = URL.valueOf("dubbo://127.0.0.1:20880/" + BookService.class.getName()
+            + "?" + Constants.SIDE_KEY + "=" + Constants.PROVIDER_SIDE);
+
+    private static final URL CONSUMER_URL = URL.valueOf("dubbo://127.0.0.1:20880/" + BookService.class.getName()
+            + "?" + Constants.SIDE_KEY + "=" + Constants.CONSUMER_SIDE);
+
+    private MockTracer mockTracer;
+    private TracingFilter filter;
+    private StubInvoker invoker;
+
+    @Before
+    public void setUp() {
+        mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        filter = new TracingFilter();
+        filter.tracingHandler = new TracingHandler(mockTracer);
+        invoker = new StubInvoker(PROVIDER_URL);
+        RpcContext.getContext().setUrl(PROVIDER_URL);
+    }
+
+    @After
+    public void tearDown() {
+        RpcContext.removeContext();
+    }
+
+    @Test
+    public void testThatProviderSpanIsCreated() {
+        filter.invoke(invoker, newInvocation());
+
+        assertThat(invoker.calls, equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+        assertServerSpanTag(mockTracer.finishedSpans().get(0));
+    }
+
+    @Test
+    public void testThatNoopTracerIsBypassed() {
+        filter.tracingHandler = new TracingHandler(NoopTracerFactory.create());
+        filter.invoke(invoker, newInvocation());
+
+        assertThat(invoker.calls, equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    @Test
+    public void testThatNotSampledCallIsBypassed() {
+        RpcContext.getContext().setAttachment(TracingHandler.SAMPLED_ATTACHMENT, TracingHandler.NOT_SAMPLED);
+        filter.invoke(invoker, newInvocation());
+
+        assertThat(invoker.calls, equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    @Test
+    public void testThatNotSampledDecisionIsPropagated() {
+        filter.tracingHandler = new TracingHandler(mockTracer, new ConstSampler(false), false);
+        RpcContext.getContext().setUrl(CONSUMER_URL);
+        RpcContext.getContext().setRemoteAddress("127.0.0.1", 20880);
+        filter.invoke(new StubInvoker(CONSUMER_URL), newInvocation());
+
+        assertThat(RpcContext.getContext().getAttachment(TracingHandler.SAMPLED_ATTACHMENT),
+                equalTo(TracingHandler.NOT_SAMPLED));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    @Test
+    public void testThatErrorIsSampled() {
+        filter.tracingHandler = new TracingHandler(mockTracer, new ConstSampler(false), true);
+        invoker.result = new RpcResult(new IllegalStateException());
+        filter.invoke(invoker, newInvocation());
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+        assertServerSpanTag(mockTracer.finishedSpans().get(0));
+        assertSpanError(mockTracer.finishedSpans().get(0));
+    }
+
+    @Test
+    public void testThatKeptCallsCarryTheirTraceId() {
+        Invocation invocation = new RpcInvocation("getBookCount", new Class<?>[0], new Object[0]);
+        filter.traceStore = true;
+        filter.invoke(invoker, invocation);
+        filter.tracingHandler = new TracingHandler(mockTracer, new ConstSampler(false), false);
+        filter.invoke(invoker, invocation);
+
+        List<TraceStore.Entry> entries = new ArrayList<>();
+        TracingMetrics.getInstance().get(BookService.class.getName() + ".getBookCount()", OperationMetrics.PROVIDER)
+                .getTraces().addRecent(entries);
+        assertThat(entries.size(), equalTo(2));
+        MockSpan.MockContext context = mockTracer.finishedSpans().get(0).context();
+        assertThat(entries.get(0).getTraceId(),
+                equalTo("spanid=" + context.spanId() + ",traceid=" + context.traceId()));
+        assertThat(entries.get(1).getTraceId(), nullValue());
+    }
+
+    @Test
+    public void testThatUntracedCallDoesNotTakeTheTraceIdOfItsNestedCall() {
+        URL untraced = URL.valueOf("dubbo://127.0.0.1:20882/" + BookService.class.getName()
+                + "?" + Constants.SIDE_KEY + "=" + Constants.PROVIDER_SIDE + "&countBooks." + OperationCache.TRACING
+                + "=false");
+        final StubInvoker consumer = new StubInvoker(CONSUMER_URL);
+        StubInvoker provider = new StubInvoker(untraced) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                filter.invoke(consumer, newInvocation());
+                return super.invoke(invocation);
+            }
+        };
+        filter.traceStore = true;
+        filter.invoke(provider, new RpcInvocation("countBooks", new Class<?>[0], new Object[0]));
+
+        assertThat(consumer.calls, equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+        List<TraceStore.Entry> entries = new ArrayList<>();
+        TracingMetrics.getInstance().get(BookService.class.getName() + ".countBooks()", OperationMetrics.PROVIDER)
+                .getTraces().addRecent(entries);
+        assertThat(entries.size(), equalTo(1));
+        assertThat(entries.get(0).getTraceId(), nullValue());
+        assertThat(TracingContext.get().getTracedSpan(), nullValue());
+    }
+
+    @Test
+    public void testThatCallsAreCountedWhenNotSampled() {
+        filter.tracingHandler = new TracingHandler(mockTracer, new ConstSampler(false), false);
+        OperationMetrics metrics = TracingMetrics.getInstance()
+                .get(BookService.class.getName() + ".getBooks(Book)", OperationMetrics.PROVIDER);
+        metrics.snapshot(true);
+        filter.invoke(invoker, newInvocation());
+        invoker.result = new RpcResult(new IllegalStateException());
+        filter.invoke(invoker, newInvocation());
+
+        OperationMetrics.Snapshot snapshot = metrics.snapshot(true);
+        assertThat(snapshot.getCalls(), equalTo(2L));
+        assertThat(snapshot.getErrors(), equalTo(1L));
+        assertThat(metrics.snapshot(false).getCalls(), equalTo(0L));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    @Test
+    public void testThatFilterOverheadIsRecorded() {
+        filter.overheadTag = true;
+        FilterOverhead overhead = TracingMetrics.getInstance().getOverhead(false);
+        overhead.snapshot(true);
+        invoker.delayMillis = 20;
+        filter.invoke(invoker, newInvocation());
+
+        FilterOverhead.Snapshot snapshot = overhead.snapshot(true);
+        assertThat(snapshot.getCalls(), equalTo(1L));
+        assertTrue(snapshot.getTotalNanos() < TimeUnit.MILLISECONDS.toNanos(20));
+        Object tag = mockTracer.finishedSpans().get(0).tags().get(TracingHandler.FILTER_OVERHEAD);
+        assertTrue(((Number) tag).longValue() > 0);
+        assertTrue(((Number) tag).longValue() < TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testThatTracingIsDisabledByUrlParameter() {
+        invoker = new StubInvoker(PROVIDER_URL.addParameter(OperationCache.TRACING, "false"));
+        filter.invoke(invoker, newInvocation());
+
+        assertThat(invoker.calls, equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    @Test
+    public void testThatEchoIsNotTraced() {
+        RpcContext.getContext().setUrl(CONSUMER_URL);
+        filter.invoke(new StubInvoker(CONSUMER_URL), new RpcInvocation(Constants.$ECHO,
+                new Class<?>[]{Object.class}, new Object[]{"ping"}));
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+    }
+
+    @Test
+    public void testThatMethodSampleRateOverridesSampler() {
+        invoker = new StubInvoker(PROVIDER_URL.addParameter("getBooks." + OperationCache.TRACING_SAMPLE, "0"));
+        filter.invoke(invoker, newInvocation());
+        assertThat(mockTracer.finishedSpans().size(), equalTo(0));
+
+        filter.tracingHandler = new TracingHandler(mockTracer, new ConstSampler(false), false);
+        invoker = new StubInvoker(PROVIDER_URL.addParameter(OperationCache.TRACING_SAMPLE, "1")
+                .addParameter(OperationCache.TRACING_ARGS, "false"));
+        invoker.result = new RpcResult(new IllegalStateException());
+        filter.invoke(invoker, newInvocation());
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+        assertFalse(mockTracer.finishedSpans().get(0).tags().containsKey(TracingHandler.METHOD_ARGUMENTS));
+    }
+
+    @Test
+    public void testThatRetriesShareTheClusterSpan() {
+        RpcContext.getContext().setUrl(CONSUMER_URL);
+        final StubInvoker failed = new StubInvoker(CONSUMER_URL);
+        failed.result = new RpcResult(new IllegalStateException());
+        final StubInvoker succeeded = new StubInvoker(CONSUMER_URL.setPort(20881));
+        StubInvoker cluster = new StubInvoker(CONSUMER_URL) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                filter.invoke(failed, invocation);
+                assertTrue(RpcContext.getContext().getAttachments().size() > 0);
+                RpcContext.getContext().clearAttachments();
+                return filter.invoke(succeeded, invocation);
+            }
+        };
+
+        filter.invokeCluster(cluster, CONSUMER_URL, newInvocation());
+
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+        MockSpan span = mockTracer.finishedSpans().get(0);
+        assertThat(span.tags().get(TracingHandler.ATTEMPTS), equalTo((Object) 2));
+        assertThat(span.logEntries().size(), equalTo(2));
+        assertThat(span.logEntries().get(0).fields().get(TracingHandler.OUTCOME), equalTo((Object) "error"));
+        assertThat(span.logEntries().get(1).fields().get(TracingHandler.PEER_ADDRESS),
+                equalTo((Object) "127.0.0.1:20881"));
+        assertFalse(span.tags().containsKey("error"));
+        assertFalse(TracingContext.get().isClusterCall());
+    }
+
+    @Test
+    public void testThatDeadlineIsPropagated() {
+        filter.deadlines = true;
+        RpcContext.getContext().setUrl(CONSUMER_URL);
+        long before = System.currentTimeMillis();
+        filter.invoke(new StubInvoker(CONSUMER_URL.addParameter(Constants.TIMEOUT_KEY, 300)), newInvocation());
+
+        long deadline = Long.parseLong(RpcContext.getContext().getAttachment(TracingHandler.DEADLINE_ATTACHMENT));
+        assertTrue(deadline >= before + 300);
+        assertTrue(deadline <= System.currentTimeMillis() + 300);
+    }
+
+    @Test
+    public void testThatRemainingBudgetIsExposed() {
+        filter.deadlines = true;
+        RpcContext.getContext().setAttachment(TracingHandler.DEADLINE_ATTACHMENT,
+                Long.toString(System.currentTimeMillis() + 10000));
+        final long[] remaining = new long[1];
+        invoker = new StubInvoker(PROVIDER_URL) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                remaining[0] = TracingDeadline.getRemainingMillis();
+                return super.invoke(invocation);
+            }
+        };
+        filter.invoke(invoker, newInvocation());
+
+        assertTrue(remaining[0] > 0 && remaining[0] <= 10000);
+        assertThat(TracingDeadline.getRemainingMillis(), equalTo(-1L));
+    }
+
+    @Test
+    public void testThatExpiredCallIsRejected() {
+        filter.deadlines = true;
+        RpcContext.getContext().setAttachment(TracingHandler.DEADLINE_ATTACHMENT,
+                Long.toString(System.currentTimeMillis() - 1000));
+        Result result = filter.invoke(invoker, newInvocation());
+
+        assertThat(invoker.calls, equalTo(0));
+        assertTrue(((RpcException) result.getException()).isTimeout());
+        assertThat(mockTracer.finishedSpans().get(0).tags().get(TracingHandler.DEADLINE_EXCEEDED),
+                equalTo((Object) true));
+    }
+
+    @Test
+    public void testThatQueueWaitIsRecorded() {
+        QueueWait queueWait = TracingMetrics.getInstance().getQueueWait();
+        queueWait.snapshot(true);
+        RpcInvocation invocation = (RpcInvocation) newInvocation();
+        MessageStamps.stampReceived(invocation, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5));
+        filter.invoke(invoker, invocation);
+
+        Object tag = mockTracer.finishedSpans().get(0).tags().get(TracingHandler.QUEUE_WAIT);
+        assertTrue(((Number) tag).longValue() >= 5000);
+        assertThat(queueWait.snapshot(true).getCalls(), equalTo(1L));
+        assertThat(MessageStamps.getReceived(invocation), equalTo(-1L));
+    }
+
+    @Test
+    public void testThatReceivedAttachmentFromTheWireIsIgnored() {
+        QueueWait queueWait = TracingMetrics.getInstance().getQueueWait();
+        queueWait.snapshot(true);
+        RpcInvocation invocation = (RpcInvocation) newInvocation();
+        invocation.setAttachment("ot-received", "0");
+        RpcContext.getContext().setAttachments(new HashMap<>(invocation.getAttachments()));
+        filter.invoke(invoker, invocation);
+
+        assertThat(mockTracer.finishedSpans().get(0).tags().get(TracingHandler.QUEUE_WAIT), nullValue());
+        assertThat(queueWait.snapshot(true).getCalls(), equalTo(0L));
+    }
+
+    @Test
+    public void testThatPayloadIsRecorded() {
+        RpcContext.getContext().setUrl(CONSUMER_URL);
+        RpcInvocation invocation = (RpcInvocation) newInvocation();
+        MessageStamps.stamp(invocation, 120, 3000);
+        StubInvoker consumer = new StubInvoker(CONSUMER_URL);
+        RpcResult result = new RpcResult();
+        MessageStamps.stamp(result, 4000, 5000);
+        consumer.result = result;
+        OperationMetrics metrics = TracingMetrics.getInstance()
+                .get(BookService.class.getName() + ".getBooks(Book)", OperationMetrics.CONSUMER);
+        metrics.getPayload().snapshot(true);
+        filter.invoke(consumer, invocation);
+
+        Map<String, Object> tags = mockTracer.finishedSpans().get(0).tags();
+        assertThat(tags.get(TracingHandler.REQUEST_BYTES), equalTo((Object) 120L));
+        assertThat(tags.get(TracingHandler.RESPONSE_BYTES), equalTo((Object) 4000L));
+        assertThat(tags.get(TracingHandler.SERIALIZATION), equalTo((Object) 8000L));
+        PayloadMetrics.Snapshot snapshot = metrics.payloadSnapshot(true);
+        assertTrue(snapshot.getRequestBytesPercentile(100) >= 120);
+        assertTrue(snapshot.getResponseBytesPercentile(100) >= 4000);
+        assertThat(snapshot.getSerializationPercentile(100), equalTo(8L));
+        assertThat(MessageStamps.getBytes(invocation), equalTo(-1L));
+        assertThat(MessageStamps.getNanos(result), equalTo(-1L));
+    }
+
+    @Test
+    public void testThatRepeatedCallsAreFolded() {
+        System.setProperty(TracingConfig.FANOUT, "2");
+        try {
+            filter.tracingHandler = new TracingHandler(mockTracer);
+        } finally {
+            System.clearProperty(TracingConfig.FANOUT);
+        }
+        final StubInvoker consumer = new StubInvoker(CONSUMER_URL);
+        final StubInvoker failed = new StubInvoker(CONSUMER_URL);
+        failed.result = new RpcResult(new IllegalStateException());
+        final Map<String, String> attachments = new HashMap<>();
+        invoker = new StubInvoker(PROVIDER_URL) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                RpcContext.getContext().setUrl(CONSUMER_URL);
+                for (int i = 0; i < 5; i++) {
+                    filter.invoke(i == 3 ? failed : consumer, newInvocation());
+                }
+                attachments.putAll(RpcContext.getContext().getAttachments());
+                return super.invoke(invocation);
+            }
+        };
+        filter.invoke(invoker, newInvocation());
+
+        assertThat(consumer.calls + failed.calls, equalTo(5));
+        assertThat(attachments.get(TracingHandler.SAMPLED_ATTACHMENT), equalTo(TracingHandler.NOT_SAMPLED));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(5));
+        MockSpan outlier = mockTracer.finishedSpans().get(2);
+        assertThat(outlier.tags().get(FanOutCompressor.OUTLIER), equalTo((Object) true));
+        assertSpanError(outlier);
+        MockSpan folded = mockTracer.finishedSpans().get(3);
+        assertThat(folded.tags().get(FanOutCompressor.COUNT), equalTo((Object) 3L));
+        assertThat(folded.tags().get(FanOutCompressor.ERRORS), equalTo((Object) 1L));
+        MockSpan server = mockTracer.finishedSpans().get(4);
+        assertThat(folded.parentId(), equalTo(server.context().spanId()));
+        assertThat(outlier.parentId(), equalTo(server.context().spanId()));
+    }
+
+    @Test
+    public void testThatProviderOfAFoldedOutlierIsNotSampled() {
+        System.setProperty(TracingConfig.FANOUT, "1");
+        try {
+            filter.tracingHandler = new TracingHandler(mockTracer);
+        } finally {
+            System.clearProperty(TracingConfig.FANOUT);
+        }
+        final StubInvoker consumer = new StubInvoker(CONSUMER_URL);
+        final Map<String, String> attachments = new HashMap<>();
+        final StubInvoker failed = new StubInvoker(CONSUMER_URL) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                attachments.putAll(RpcContext.getContext().getAttachments());
+                return super.invoke(invocation);
+            }
+        };
+        failed.result = new RpcResult(new IllegalStateException());
+        invoker = new StubInvoker(PROVIDER_URL) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                RpcContext.getContext().setUrl(CONSUMER_URL);
+                filter.invoke(consumer, newInvocation());
+                filter.invoke(failed, newInvocation());
+                return super.invoke(invocation);
+            }
+        };
+        filter.invoke(invoker, newInvocation());
+
+        assertTrue(filter.tracingHandler.isNotSampled(attachments));
+        MockSpan outlier = mockTracer.finishedSpans().get(1);
+        assertThat(outlier.tags().get(FanOutCompressor.OUTLIER), equalTo((Object) true));
+        assertSpanError(outlier);
+    }
+
+    @Test
+    public void testThatCallsUnderAnApplicationSpanAreNotFolded() {
+        System.setProperty(TracingConfig.FANOUT, "1");
+        try {
+            filter.tracingHandler = new TracingHandler(mockTracer);
+        } finally {
+            System.clearProperty(TracingConfig.FANOUT);
+        }
+        RpcContext.getContext().setUrl(CONSUMER_URL);
+        StubInvoker consumer = new StubInvoker(CONSUMER_URL);
+        try (ActiveSpan parent = mockTracer.buildSpan("application").startActive()) {
+            for (int i = 0; i < 3; i++) {
+                filter.invoke(consumer, newInvocation());
+            }
+            assertThat(mockTracer.finishedSpans().size(), equalTo(3));
+        }
+        for (MockSpan span : mockTracer.finishedSpans()) {
+            assertFalse(span.tags().containsKey(FanOutCompressor.COUNT));
+        }
+    }
+
+    @Test
+    public void testThatNestedCallsOfMixedFormatsDoNotForwardTheInboundContext() {
+        RpcContext.getContext().setAttachment(CompactPropagation.ATTACHMENT, "1;traceid=7,spanid=8");
+        final URL compactUrl = CONSUMER_URL.addParameter(CompactPropagation.PARAMETER, CompactPropagation.COMPACT);
+        final Map<String, String> textMapCall = new HashMap<>();
+        final Map<String, String> compactCall = new HashMap<>();
+        invoker = new StubInvoker(PROVIDER_URL) {
+            @Override
+            public Result invoke(Invocation invocation) throws RpcException {
+                RpcContext.getContext().setUrl(CONSUMER_URL);
+                filter.invoke(new StubInvoker(CONSUMER_URL), newInvocation());
+                textMapCall.putAll(RpcContext.getContext().getAttachments());
+                filter.invoke(new StubInvoker(compactUrl), newInvocation());
+                compactCall.putAll(RpcContext.getContext().getAttachments());
+                return super.invoke(invocation);
+            }
+        };
+        filter.invoke(invoker, newInvocation());
+
+        MockSpan textMapSpan = mockTracer.finishedSpans().get(0);
+        assertThat(textMapSpan.context().traceId(), equalTo(7L));
+        assertThat(textMapSpan.parentId(), equalTo(mockTracer.finishedSpans().get(2).context().spanId()));
+        assertFalse(textMapCall.containsKey(CompactPropagation.ATTACHMENT));
+        assertThat(textMapCall.get("spanid"), equalTo(Long.toString(textMapSpan.context().spanId())));
+
+        MockSpan compactSpan = mockTracer.finishedSpans().get(1);
+        assertFalse(compactCall.containsKey("spanid"));
+        assertFalse(compactCall.containsKey("traceid"));
+        assertTrue(compactCall.get(CompactPropagation.ATTACHMENT)
+                .contains("spanid=" + compactSpan.context().spanId()));
+    }
+
+    private static Invocation newInvocation() {
+        return new RpcInvocation("getBooks", new Class<?>[]{Book.class}, new Object[]{new Book("book")});
+    }
+
+    static class StubInvoker implements Invoker<BookService> {
+        final URL url;
+        int calls;
+        long delayMillis;
+        Result result = new RpcResult();
+
+        StubInvoker(URL url) {
+            this.url = url;
+        }
+
+        @Override
+        public Class<BookService> getInterface() {
+            return BookService.class;
+        }
+
+        @Override
+        public Result invoke(Invocation invocation) throws RpcException {
+            calls++;
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.common.extension.ExtensionLoader;
+import com.alibaba.dubbo.rpc.Filter;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.contrib.dubbo.filter.service.EchoService;
+import io.opentracing.contrib.dubbo.filter.service.EchoServiceImpl;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.GlobalTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Throughput and latency of concurrent consumers calling a local provider with and without the filter, skipped
+ * unless -Ddubbo.tracing.load=true. e.g.
+ * <pre>
+ * mvn test -Dtest=TracingLoadTest -Ddubbo.tracing.load=true -Ddubbo.tracing.load.threads=16
+ * </pre>
+ * Fails when the traced throughput is lower than the untraced one by more than dubbo.tracing.load.budget, or when
+ * a span is left active on a pooled consumer or provider thread. The default budget leaves room for the
+ * {@link MockTracer}, which keeps every finished span in a synchronized list.
+ */
+public class TracingLoadTest {
+
+    private static final int THREADS = Integer.getInteger("dubbo.tracing.load.threads", 8);
+    private static final int CALLS = Integer.getInteger("dubbo.tracing.load.calls", 5000);
+    private static final int ROUNDS = Integer.getInteger("dubbo.tracing.load.rounds", 3);
+    private static final double BUDGET = Double.parseDouble(System.getProperty("dubbo.tracing.load.budget", "0.5"));
+
+    private static MockTracer mockTracer;
+    private static TracingFilter filter;
+    private static ClassPathXmlApplicationContext registry;
+    private static ClassPathXmlApplicationContext provider;
+    private static ClassPathXmlApplicationContext consumer;
+    private static EchoService tracedEchoService;
+    private static EchoService untracedEchoService;
+
+    @BeforeClass
+    public static void startServer() {
+        assumeTrue(Boolean.getBoolean("dubbo.tracing.load"));
+
+        mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        filter = (TracingFilter) ExtensionLoader.getExtensionLoader(Filter.class).getExtension("opentracingFilter");
+        filter.tracingHandler = new TracingHandler(mockTracer);
+        EchoServiceImpl.tracer = mockTracer;
+
+        registry = new ClassPathXmlApplicationContext("dubbo-load-registry.xml");
+        registry.start();
+        provider = new ClassPathXmlApplicationContext("dubbo-load-provider.xml");
+        provider.start();
+        consumer = new ClassPathXmlApplicationContext("dubbo-load-consumer.xml");
+        consumer.start();
+
+        tracedEchoService = consumer.getBean("tracedEchoService", EchoService.class);
+        untracedEchoService = consumer.getBean("untracedEchoService", EchoService.class);
+    }
+
+    @AfterClass
+    public static void closeServer() {
+        if (mockTracer == null) {
+            return;
+        }
+        consumer.close();
+        provider.close();
+        registry.close();
+        filter.tracingHandler = new TracingHandler();
+        EchoServiceImpl.tracer = GlobalTracer.get();
+    }
+
+    @Test
+    public void testThatTracingOverheadIsWithinBudget() throws Exception {
+        ExecutorService consumers = Executors.newFixedThreadPool(THREADS);
+        try {
+            run(consumers, untracedEchoService, CALLS / 10);
+            run(consumers, tracedEchoService, CALLS / 10);
+            mockTracer.reset();
+
+            Result untraced = null;
+            Result traced = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                untraced = Result.best(untraced, run(consumers, untracedEchoService, CALLS));
+
+                Result result = run(consumers, tracedEchoService, CALLS);
+                assertThat(waitForFinishedSpans(2 * THREADS * CALLS), equalTo(2 * THREADS * CALLS));
+                mockTracer.reset();
+                traced = Result.best(traced, result);
+            }
+            // spans left active by the last traced round are found by untraced calls on the same threads
+            run(consumers, untracedEchoService, CALLS / 10);
+
+            System.out.println("untraced " + untraced);
+            System.out.println("traced   " + traced);
+            assertThat(EchoServiceImpl.LEAKS.get(), equalTo(0));
+            assertTrue("Traced throughput " + traced.throughput() + " calls/s is below untraced "
+                            + untraced.throughput() + " calls/s by more than " + BUDGET,
+                    traced.throughput() >= untraced.throughput() * (1 - BUDGET));
+        } finally {
+            consumers.shutdownNow();
+        }
+    }
+
+    private static int waitForFinishedSpans(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && mockTracer.finishedSpans().size() < count; i++) {
+            Thread.sleep(10L);
+        }
+        return mockTracer.finishedSpans().size();
+    }
+
+    private static Result run(ExecutorService consumers, final EchoService echoService, final int calls)
+            throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(consumers.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() throws Exception {
+                    long[] latencies = new long[calls];
+                    start.await();
+                    for (int n = 0; n < calls; n++) {
+                        long begin = System.nanoTime();
+                        echoService.echo("hello");
+                        latencies[n] = System.nanoTime() - begin;
+                        if (mockTracer.activeSpan() != null) {
+                            EchoServiceImpl.LEAKS.incrementAndGet();
+                        }
+                    }
+                    return latencies;
+                }
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        long[] latencies = new long[THREADS * calls];
+        for (int i = 0; i < THREADS; i++) {
+            System.arraycopy(futures.get(i).get(), 0, latencies, i * calls, calls);
+        }
+        return new Result(System.nanoTime() - begin, latencies);
+    }
+
+    private static final class Result {
+        private final long elapsedNanos;
+        private final long[] latencies;
+
+        Result(long elapsedNanos, long[] latencies) {
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            Arrays.sort(latencies);
+        }
+
+        static Result best(Result a, Result b) {
+            return a == null || b.throughput() > a.throughput() ? b : a;
+        }
+
+        long throughput() {
+            return latencies.length * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        long percentileMicros(double percentile) {
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return TimeUnit.NANOSECONDS.toMicros(latencies[Math.max(0, index)]);
+        }
+
+        @Override
+        public String toString() {
+            return throughput() + " calls/s, latency us p50=" + percentileMicros(50)
+                    + " p90=" + percentileMicros(90)
+                    + " p99=" + percentileMicros(99)
+                    + " p99.9=" + percentileMicros(99.9)
+                    + " max=" + percentileMicros(100);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import com.alibaba.dubbo.remoting.Channel;
+import com.alibaba.dubbo.remoting.exchange.Request;
+import com.alibaba.dubbo.remoting.exchange.Response;
+import com.alibaba.dubbo.remoting.exchange.ResponseCallback;
+import com.alibaba.dubbo.remoting.exchange.support.DefaultFuture;
+import com.alibaba.dubbo.rpc.RpcResult;
+import com.alibaba.dubbo.rpc.protocol.dubbo.FutureAdapter;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.opentracing.contrib.dubbo.core.OperationMetadata;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TracingResponseCallbackTest {
+
+    private final MockTracer mockTracer =
+            new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+    private final TracingHandler tracingHandler = new TracingHandler(mockTracer);
+    private final Channel channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{Channel.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getReturnType() == boolean.class ? false : null;
+                }
+            });
+
+    @Test
+    public void testThatChainedCallbackRunsOnce() {
+        Request request = new Request();
+        DefaultFuture future = new DefaultFuture(channel, request, 1000);
+        CountingCallback delegate = new CountingCallback();
+        future.setCallback(delegate);
+
+        assertTrue(TracingResponseCallback.register(new FutureAdapter<>(future), newSpan(), new Object[0]));
+        respond(request);
+
+        assertThat(delegate.calls.get(), equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+    }
+
+    @Test
+    public void testThatResponseArrivingWhileRegisteringRunsChainedCallbackOnce() {
+        final Request request = new Request();
+        DefaultFuture future = new DefaultFuture(channel, request, 1000) {
+            private boolean registered;
+
+            @Override
+            public void setCallback(ResponseCallback callback) {
+                if (registered) {
+                    // the response arrives after the chained callback was read, before ours is set
+                    respond(request);
+                }
+                registered = true;
+                super.setCallback(callback);
+            }
+        };
+        CountingCallback delegate = new CountingCallback();
+        future.setCallback(delegate);
+
+        assertTrue(TracingResponseCallback.register(new FutureAdapter<>(future), newSpan(), new Object[0]));
+
+        assertThat(delegate.calls.get(), equalTo(1));
+        assertThat(mockTracer.finishedSpans().size(), equalTo(1));
+    }
+
+    private TracingHandler.Span newSpan() {
+        return tracingHandler.newSpan(true, new HashMap<String, String>(),
+                new OperationMetadata("test()", "dubbo://127.0.0.1:20880/test()", TracingHandler.COMPONENT, false));
+    }
+
+    private void respond(Request request) {
+        Response response = new Response(request.getId());
+        response.setResult(new RpcResult("ok"));
+        DefaultFuture.received(channel, response);
+    }
+
+    private static final class CountingCallback implements ResponseCallback {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void done(Object response) {
+            calls.incrementAndGet();
+        }
+
+        @Override
+        public void caught(Throwable exception) {
+            calls.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package io.opentracing.contrib.dubbo.filter;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+
+import io.opentracing.contrib.dubbo.core.OperationMetadata;
+import io.opentracing.contrib.dubbo.core.OperationMetrics;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.contrib.dubbo.core.TracingMetrics;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalActiveSpanSource;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TracingTelnetHandlerTest {
+
+    @Test
+    public void testThatTelnetCommandListsCalls() {
+        MockTracer mockTracer = new MockTracer(new ThreadLocalActiveSpanSource(), MockTracer.Propagator.TEXT_MAP);
+        TracingHandler.Span span = new TracingHandler(mockTracer).newSpan(false, new HashMap<String, String>(),
+                new OperationMetadata("org.xxx.BookService.getBooks(Book)", "dubbo://127.0.0.1:20880/getBooks",
+                        TracingHandler.COMPONENT, false));
+        span.success(null);
+        span.close();
+        MockSpan.MockContext context = mockTracer.finishedSpans().get(0).context();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 20880);
+
+        TracingMetrics metrics = new TracingMetrics();
+        metrics.get("org.xxx.BookService.getBooks(Book)", OperationMetrics.PROVIDER).getTraces()
+                .record(System.currentTimeMillis(), 5000, false, address, span);
+        metrics.get("org.xxx.BookService.getBooks(Book)", OperationMetrics.PROVIDER).getTraces()
+                .record(System.currentTimeMillis(), 100, true, address, null);
+        metrics.get("org.xxx.EchoService.echo(String)", OperationMetrics.CONSUMER).getTraces()
+                .record(System.currentTimeMillis(), 3000, false, null, null);
+        TracingTelnetHandler handler = new TracingTelnetHandler();
+        handler.tracingMetrics = metrics;
+
+        String[] top = handler.telnet(null, "top 2").split("\r\n");
+        assertThat(top.length, equalTo(2));
+        assertTrue(top[0].endsWith("5000us provider org.xxx.BookService.getBooks(Book) 127.0.0.1:20880 "
+                + "spanid=" + context.spanId() + ",traceid=" + context.traceId()));
+        assertTrue(top[1].contains("3000us consumer org.xxx.EchoService.echo(String)"));
+        assertThat(handler.telnet(null, "slow EchoService.echo").split("\r\n").length, equalTo(1));
+        assertTrue(handler.telnet(null, "errors").endsWith("100us provider org.xxx.BookService.getBooks(Book) "
+                + "127.0.0.1:20880 error"));
+        assertThat(handler.telnet(null, "recent Missing"), equalTo("No call kept."));
+    }
+}
@@ -14,6 +14,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import io.opentracing.ActiveSpan;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
 import io.opentracing.contrib.dubbo.filter.service.Book;
 import io.opentracing.contrib.dubbo.filter.service.BookService;
 import io.opentracing.contrib.dubbo.filter.service.UserService;
@@ -22,14 +23,15 @@ import io.opentracing.mock.MockTracer;
 import io.opentracing.util.GlobalTracer;
 import io.opentracing.util.ThreadLocalActiveSpanSource;
 
-import static io.opentracing.contrib.dubbo.filter.AssertSpan.assertChildOfParent;
-import static io.opentracing.contrib.dubbo.filter.AssertSpan.assertClientSpanTag;
-import static io.opentracing.contrib.dubbo.filter.AssertSpan.assertHasArguments;
-import static io.opentracing.contrib.dubbo.filter.AssertSpan.assertNotParent;
-import static io.opentracing.contrib.dubbo.filter.AssertSpan.assertServerSpanTag;
-import static io.opentracing.contrib.dubbo.filter.AssertSpan.assertSpanError;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertChildOfParent;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertClientSpanTag;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertHasArguments;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertNotParent;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertServerSpanTag;
+import static io.opentracing.contrib.dubbo.core.AssertSpan.assertSpanError;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
@@ -79,6 +81,13 @@ public class TracingTest {
         mockTracer.reset();
     }
 
+    private static List<MockSpan> waitForFinishedSpans(int count) throws InterruptedException {
+        for (int i = 0; i < 500 && mockTracer.finishedSpans().size() < count; i++) {
+            Thread.sleep(10L);
+        }
+        return mockTracer.finishedSpans();
+    }
+
     @Test
     public void testThatNewChildSpanIsCreatedWhenParent() {
         assertThat(bookService.getBooks(QUERY_CONDITION).size(), equalTo(2));
@@ -92,6 +101,11 @@ public class TracingTest {
         assertClientSpanTag(allSpans.get(2));
         assertChildOfParent(allSpans.get(0), allSpans.get(1));
         assertChildOfParent(allSpans.get(1), allSpans.get(2));
+        assertThat(allSpans.get(1).tags().get(TracingHandler.QUEUE_WAIT), instanceOf(Long.class));
+        assertThat(allSpans.get(2).tags().get(TracingHandler.QUEUE_WAIT), is(nullValue()));
+        assertThat(allSpans.get(1).tags().get(TracingHandler.REQUEST_BYTES), instanceOf(Long.class));
+        assertThat(allSpans.get(2).tags().get(TracingHandler.REQUEST_BYTES), instanceOf(Long.class));
+        assertThat(allSpans.get(2).tags().get(TracingHandler.RESPONSE_BYTES), instanceOf(Long.class));
         assertThat(mockTracer.activeSpan(), is(nullValue()));
     }
 
@@ -152,27 +166,29 @@ public class TracingTest {
 
         try (ActiveSpan scope = mockTracer.buildSpan("parent span").startActive()) {
             bookServiceWithAsync.getBooks(QUERY_CONDITION);
+            assertThat(mockTracer.activeSpan(), not(nullValue()));
             Future<Collection<Book>> bookFuture = RpcContext.getContext().getFuture();
             assertThat(bookFuture.get().size(), equalTo(2));
             assertThat(mockTracer.activeSpan(), not(nullValue()));
 
-            List<MockSpan> allSpans = mockTracer.finishedSpans();
+            List<MockSpan> allSpans = waitForFinishedSpans(3);
             assertThat(allSpans.size(), equalTo(3));
-            assertThat(allSpans.get(1).operationName(), equalTo("Get Books"));
-            assertThat(allSpans.get(2).operationName(), equalTo(SERVICE_CLASS_NAME + "getBooks(Book)"));
-            assertServerSpanTag(allSpans.get(2));
+            assertThat(allSpans.get(0).operationName(), equalTo("Get Books"));
+            assertThat(allSpans.get(1).operationName(), equalTo(SERVICE_CLASS_NAME + "getBooks(Book)"));
+            assertServerSpanTag(allSpans.get(1));
 
-            assertThat(allSpans.get(0).operationName(), equalTo(SERVICE_CLASS_NAME + "getBooks(Book)"));
-            assertClientSpanTag(allSpans.get(0));
+            assertThat(allSpans.get(2).operationName(), equalTo(SERVICE_CLASS_NAME + "getBooks(Book)"));
+            assertClientSpanTag(allSpans.get(2));
 
-            assertChildOfParent(allSpans.get(2), allSpans.get(0));
+            assertChildOfParent(allSpans.get(0), allSpans.get(1));
             assertChildOfParent(allSpans.get(1), allSpans.get(2));
+            assertThat(allSpans.get(2).finishMicros() >= allSpans.get(1).finishMicros(), is(true));
         }
 
         List<MockSpan> allSpans = mockTracer.finishedSpans();
         assertThat(allSpans.size(), equalTo(4));
         assertThat(allSpans.get(3).operationName(), equalTo("parent span"));
-        assertChildOfParent(allSpans.get(0), allSpans.get(3));
+        assertChildOfParent(allSpans.get(2), allSpans.get(3));
         assertNotParent(allSpans.get(3));
         assertThat(mockTracer.activeSpan(), is(nullValue()));
     }
@@ -220,6 +236,29 @@ public class TracingTest {
         assertThat(mockTracer.activeSpan(), is(nullValue()));
     }
 
+    @Test
+    public void testThatAsyncClientSpanIsFinishedOnTimeout() throws InterruptedException {
+        bookServiceWithAsync.getBooksWithTimeout(2000);
+        Future<Collection<Book>> bookFuture = RpcContext.getContext().getFuture();
+        try {
+            bookFuture.get();
+            fail("Expected Exception to be raised");
+        } catch (final ExecutionException ex) {
+            /* expected exception */
+        }
+
+        List<MockSpan> allSpans = waitForFinishedSpans(1);
+        assertThat(allSpans.size(), equalTo(1));
+        assertClientSpanTag(allSpans.get(0));
+        assertSpanError(allSpans.get(0));
+        assertThat(mockTracer.activeSpan(), is(nullValue()));
+
+        // the provider is still serving the call, its span is the next one
+        allSpans = waitForFinishedSpans(2);
+        assertThat(allSpans.size(), equalTo(2));
+        assertServerSpanTag(allSpans.get(1));
+    }
+
     @Test
     public void testThatNewSpanIsCreatedInCaseOfServerError() {
         try {
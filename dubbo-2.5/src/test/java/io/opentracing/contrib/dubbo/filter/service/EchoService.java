@@ -0,0 +1,6 @@
+package io.opentracing.contrib.dubbo.filter.service;
+
+public interface EchoService {
+
+    String echo(String message);
+}
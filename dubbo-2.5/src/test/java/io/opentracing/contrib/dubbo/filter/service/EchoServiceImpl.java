@@ -0,0 +1,40 @@
+package io.opentracing.contrib.dubbo.filter.service;
+
+import com.alibaba.dubbo.rpc.RpcContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.opentracing.ActiveSpan;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.util.GlobalTracer;
+
+/**
+ * Counts the calls served on a thread whose active span is not the span of the call.
+ */
+public class EchoServiceImpl implements EchoService {
+
+    public static final AtomicInteger LEAKS = new AtomicInteger();
+    public static volatile Tracer tracer = GlobalTracer.get();
+
+    private final boolean traced;
+
+    public EchoServiceImpl(boolean traced) {
+        this.traced = traced;
+    }
+
+    @Override
+    public String echo(String message) {
+        ActiveSpan activeSpan = tracer.activeSpan();
+        if (traced) {
+            String traceId = RpcContext.getContext().getAttachment("traceid");
+            if (activeSpan == null || traceId == null
+                    || ((MockSpan.MockContext) activeSpan.context()).traceId() != Long.parseLong(traceId)) {
+                LEAKS.incrementAndGet();
+            }
+        } else if (activeSpan != null) {
+            LEAKS.incrementAndGet();
+        }
+        return message;
+    }
+}
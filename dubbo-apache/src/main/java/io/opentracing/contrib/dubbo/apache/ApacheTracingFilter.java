@@ -0,0 +1,155 @@
+package io.opentracing.contrib.dubbo.apache;
+
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.common.constants.CommonConstants;
+import org.apache.dubbo.common.extension.Activate;
+import org.apache.dubbo.rpc.Filter;
+import org.apache.dubbo.rpc.Invocation;
+import org.apache.dubbo.rpc.Invoker;
+import org.apache.dubbo.rpc.Result;
+import org.apache.dubbo.rpc.RpcContext;
+import org.apache.dubbo.rpc.RpcException;
+
+import java.util.Map;
+
+import io.opentracing.contrib.dubbo.core.MicrosClock;
+import io.opentracing.contrib.dubbo.core.OperationCache;
+import io.opentracing.contrib.dubbo.core.OperationMetadata;
+import io.opentracing.contrib.dubbo.core.TracingConfig;
+import io.opentracing.contrib.dubbo.core.TracingContext;
+import io.opentracing.contrib.dubbo.core.TracingHandler;
+import io.opentracing.contrib.dubbo.core.TracingMetrics;
+
+/**
+ * The filter of Apache Dubbo 2.7.8+ and 3.x, sharing the handler, sampling, rules and metrics of
+ * {@code TracingFilter} of Dubbo 2.5.
+ * <p>
+ * Every call returns an AsyncRpcResult there, synchronous or not. The span is deactivated when the filter
+ * returns and finished by the listener when the result completes, on the thread completing it, so asynchronous
+ * calls need no callback of their own and no extra thread.
+ */
+@Activate(group = {CommonConstants.PROVIDER, CommonConstants.CONSUMER}, order = -9000)
+public class ApacheTracingFilter implements Filter, Filter.Listener {
+
+    static final String CALL_KEY = ApacheTracingFilter.class.getName() + ".call";
+
+    protected TracingHandler tracingHandler = new TracingHandler();
+    protected OperationCache operationCache = OperationCache.getInstance();
+    protected TracingMetrics tracingMetrics = TracingConfig.getBoolean(TracingConfig.METRICS, true)
+            ? TracingMetrics.getInstance() : null;
+
+    @Override
+    public Result invoke(Invoker<?> invoker, Invocation invocation) throws RpcException {
+        boolean active = tracingHandler.isActive();
+        if (!active && tracingMetrics == null) {
+            return invoker.invoke(invocation);
+        }
+
+        URL url = invoker.getUrl();
+        boolean isConsumer = isConsumer(url);
+        OperationMetadata operation = operationCache.get(url.getProtocol(), url.getHost(), url.getPort(),
+                url.getPath(), invocation.getMethodName(), invocation.getParameterTypes(), url.getParameters());
+        Call call = new Call(isConsumer, operation);
+        invocation.put(CALL_KEY, call);
+        if (!active || !tracingHandler.isTraced(operation, isConsumer)) {
+            return invoker.invoke(invocation);
+        }
+
+        Map<String, String> contextCarrier = invocation.getAttachments();
+        TracingHandler.Span span = !isConsumer && tracingHandler.isNotSampled(contextCarrier)
+                ? null : tracingHandler.newSpan(isConsumer, contextCarrier, operation);
+        if (span == null) {
+            return invokeNotSampled(call, invoker, invocation);
+        }
+        call.span = span;
+        span.setRemoteAddress(RpcContext.getContext().getRemoteAddressString());
+        try {
+            return invoker.invoke(invocation);
+        } finally {
+            span.detach();
+        }
+    }
+
+    /**
+     * Call without span. Nested calls made on this thread while serving it are not sampled either.
+     */
+    private Result invokeNotSampled(Call call, Invoker<?> invoker, Invocation invocation) throws RpcException {
+        TracingContext context = TracingContext.get();
+        boolean notSampled = context.isNotSampled();
+        context.setNotSampled(true);
+        call.notSampled = true;
+        if (tracingHandler.isSampleErrors()) {
+            call.remoteAddress = RpcContext.getContext().getRemoteAddressString();
+        }
+        try {
+            return invoker.invoke(invocation);
+        } finally {
+            context.setNotSampled(notSampled);
+        }
+    }
+
+    @Override
+    public void onResponse(Result result, Invoker<?> invoker, Invocation invocation) {
+        complete(invocation, result.hasException() ? result.getException() : null);
+    }
+
+    @Override
+    public void onError(Throwable e, Invoker<?> invoker, Invocation invocation) {
+        complete(invocation, e);
+    }
+
+    private void complete(Invocation invocation, Throwable e) {
+        Object value = invocation.get(CALL_KEY);
+        if (!(value instanceof Call)) {
+            return;
+        }
+
+        Call call = (Call) value;
+        if (call.span != null) {
+            if (e != null) {
+                call.span.error(e, invocation.getArguments());
+            } else {
+                call.span.success(invocation.getArguments());
+            }
+            call.span.finish();
+        } else if (call.notSampled && e != null && tracingHandler.isSampleErrors()) {
+            tracingHandler.reportError(call.isConsumer, call.remoteAddress, call.operation, call.startMicros, e,
+                    invocation.getArguments());
+        }
+        if (tracingMetrics != null) {
+            tracingMetrics.get(call.operation, call.isConsumer).record(System.nanoTime() - call.startNanos, e != null);
+        }
+    }
+
+    /**
+     * From the side parameter of the invoker's url, {@link RpcContext#isConsumerSide()} resolves addresses.
+     */
+    private static boolean isConsumer(URL url) {
+        String side = url.getParameter(CommonConstants.SIDE_KEY);
+        if (side == null) {
+            return RpcContext.getContext().isConsumerSide();
+        }
+        return CommonConstants.CONSUMER_SIDE.equals(side);
+    }
+
+    /**
+     * State of a call kept with its invocation until its result completes.
+     */
+    private static final class Call {
+        private final boolean isConsumer;
+        private final OperationMetadata operation;
+        private final long startNanos = System.nanoTime();
+        private final long startMicros = MicrosClock.nowMicros();
+        private TracingHandler.Span span;
+        private boolean notSampled;
+        /**
+         * Read from the RpcContext on the calling thread, since the result may complete on another one.
+         */
+        private String remoteAddress;
+
+        Call(boolean isConsumer, OperationMetadata operation) {
+            this.isConsumer = isConsumer;
+            this.operation = operation;
+        }
+    }
+}